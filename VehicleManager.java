@@ -18,8 +18,19 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.*;
+import com.sun.net.httpserver.*;
+import java.net.*;
+import java.lang.management.ManagementFactory;
+import javax.management.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 
 
 final class FDate
@@ -40,35 +51,146 @@ final class FDate
         Day = (byte)D;
     }
 
+    /** days since 1970/1/1 in the proleptic gregorian calendar */
+    public int ToEpochDay()
+    {
+        return EpochDayOf(Year, Month, Day);
+    }
+
+    public static int EpochDayOf(long Packed)
+    {
+        return EpochDayOf((int)(Packed >> 16), (int)((Packed >> 8) & 0xFF), (int)(Packed & 0xFF));
+    }
+
+    public static int EpochDayOf(int Y, int M, int D)
+    {
+        int ShiftedYear = M <= 2 ? Y - 1 : Y;
+        int Era = Math.floorDiv(ShiftedYear, 400);
+        int YearOfEra = ShiftedYear - Era * 400;
+        int DayOfYear = (153 * (M > 2 ? M - 3 : M + 9) + 2) / 5 + D - 1;
+        int DayOfEra = YearOfEra * 365 + YearOfEra / 4 - YearOfEra / 100 + DayOfYear;
+        return Era * 146097 + DayOfEra - 719468;
+    }
+
+    /** packed date of the given day since 1970/1/1, the inverse of EpochDayOf */
+    public static long PackEpochDay(int EpochDay)
+    {
+        int Shifted = EpochDay + 719468;
+        int Era = Math.floorDiv(Shifted, 146097);
+        int DayOfEra = Shifted - Era * 146097;
+        int YearOfEra = (DayOfEra - DayOfEra / 1460 + DayOfEra / 36524 - DayOfEra / 146096) / 365;
+        int DayOfYear = DayOfEra - (365 * YearOfEra + YearOfEra / 4 - YearOfEra / 100);
+        int ShiftedMonth = (5 * DayOfYear + 2) / 153;
+        int D = DayOfYear - (153 * ShiftedMonth + 2) / 5 + 1;
+        int M = ShiftedMonth < 10 ? ShiftedMonth + 3 : ShiftedMonth - 9;
+        return Pack(YearOfEra + Era * 400 + (M <= 2 ? 1 : 0), M, D);
+    }
+
+    public static FDate FromEpochDay(int EpochDay)
+    {
+        return FromInt64(PackEpochDay(EpochDay));
+    }
+
+    public static FDate FromInt64(long Value)
+    {
+        return new FDate((int)(Value >> 16), (int)((Value >> 8) & 0xFF), (int)(Value & 0xFF));
+    }
+
     public long ToInt64()
     {
-        long DayValue = (long)Day;
-        long MonthValue = (long)Month << 8;
-        long YearValue = (long)Year << 16;
+        return Pack(Year, Month, Day);
+    }
+
+    public static long Pack(int Y, int M, int D)
+    {
+        long DayValue = (long)D;
+        long MonthValue = (long)M << 8;
+        long YearValue = (long)Y << 16;
         return DayValue | MonthValue | YearValue;
     }
 
     public void FromString(String Source)
     {
-        String[] Dates = Source.split("/");
+        long Packed = Parse(Source, 0, Source.length());
 
-        if(Dates.length != 3)
-        {
-            throw new IllegalArgumentException();
-        }
+        Year = (int)(Packed >> 16);
+        Month = (byte)((Packed >> 8) & 0xFF);
+        Day = (byte)(Packed & 0xFF);
+    }
 
-        String DayStr =  Dates[2];
-        String MonthStr = Dates[1];
-        String YearStr = Dates[0];
+    public static long Parse(CharSequence Source)
+    {
+        return Parse(Source, 0, Source.length());
+    }
+
+    /** packed date of Source[Begin, End) written as Y/M/D, read in place without splitting, anything that is not a real calendar day throws */
+    public static long Parse(CharSequence Source, int Begin, int End)
+    {
+        int Year = 0;
+        int Month = 0;
+        int Day = 0;
+        int Field = 0;
+        int Digits = 0;
 
-        Year = (int)Integer.parseUnsignedInt(YearStr);
-        Month = (byte)Integer.parseUnsignedInt(MonthStr);
-        Day = (byte)Integer.parseUnsignedInt(DayStr);
+        for(int Index = Begin; Index < End; ++Index)
+        {
+            char Each = Source.charAt(Index);
+
+            if(Each >= '0' && Each <= '9' && Digits < 4)
+            {
+                Day = Day * 10 + (Each - '0');
+                ++Digits;
+            }
+            else if(Each == '/' && Digits != 0 && Field < 2)
+            {
+                Year = Month;
+                Month = Day;
+                Day = 0;
+                Digits = 0;
+                ++Field;
+            }
+            else
+            {
+                throw new IllegalArgumentException("invalid date " + Source.subSequence(Begin, End));
+            }
+        }
 
-        if(Month > 12 || Day > 31)
+        if(Field != 2 || Digits == 0 || !IsValid(Year, Month, Day))
         {
-            throw new IllegalArgumentException();
+            throw new IllegalArgumentException("invalid date " + Source.subSequence(Begin, End));
         }
+
+        return Pack(Year, Month, Day);
+    }
+
+    public static boolean IsLeapYear(int Y)
+    {
+        return (Y & 3) == 0 && (Y % 100 != 0 || Y % 400 == 0);
+    }
+
+    public static int DaysInMonth(int Y, int M)
+    {
+        return M == 2 ? (IsLeapYear(Y) ? 29 : 28) : 30 + ((M + (M >> 3)) & 1);
+    }
+
+    /** 9999/12/31, the latest valid date and so the latest day a booking can end on */
+    public static final int LastEpochDay = EpochDayOf(9999, 12, 31);
+
+    /** years 1 to 9999, so every valid date also has an epoch day that fits an int */
+    public static boolean IsValid(int Y, int M, int D)
+    {
+        return Y >= 1 && Y <= 9999 && M >= 1 && M <= 12 && D >= 1 && D <= DaysInMonth(Y, M);
+    }
+
+    public FDate PlusDays(int Days)
+    {
+        return FromEpochDay(ToEpochDay() + Days);
+    }
+
+    /** days from this date to Other, negative when Other comes first */
+    public int DaysUntil(FDate Other)
+    {
+        return Other.ToEpochDay() - ToEpochDay();
     }
 
     @Override public String toString()
@@ -122,389 +244,6019 @@ class FBooking
     }
 }
 
-class Vehicle extends Object
+/**
+non-overlapping bookings of one vehicle ordered by start date, keyed on the packed FDate
+stored as a treap in parallel primitive arrays, FBooking objects are only created while iterating
+*/
+final class FBookingIndex implements Iterable<FBooking>
 {
-    public ArrayList<FBooking> Bookings;
-    public ArrayList<FBooking> GetBookings() {return Bookings;}
+    private static final int None = -1;
 
-    public String RegNumber;
-    public String Model;
-    public String Color;
+    private long[] From;
+    private long[] To;
+    private int[] Left;
+    private int[] Right;
+    private int Root = None;
+    private int Count = 0;
 
-    static final public ArrayList<String> Models = InitModels();
-    static final public ArrayList<String> Colors = InitColors();
+    /** the arrays are also referenced by a copy, so they have to be cloned before the next change */
+    private boolean Shared = false;
 
-    static private ArrayList<String> InitModels()
+    FBookingIndex()
     {
-        ArrayList<String> Result = new ArrayList<String>();
-        Result.add("Ford");
-        Result.add("Lamborghini");
-        Result.add("Volvo");
-        Result.add("BMW");
-        Result.add("Ferrari");
-        Result.add("Peugeot");
-        return Result;
+        this(4);
     }
 
-    static private ArrayList<String> InitColors()
+    FBookingIndex(int Capacity)
     {
-        ArrayList<String> Result = new ArrayList<String>();
-        Result.add("Red");
-        Result.add("Black");
-        Result.add("White");
-        Result.add("Pink");
-        Result.add("Brown");
-        Result.add("Blue");
-        return Result;
+        From = new long[Capacity];
+        To = new long[Capacity];
+        Left = new int[Capacity];
+        Right = new int[Capacity];
     }
 
-    public Vehicle(String InModel, String InColor, String InRegNumber)
+    public int Size()
     {
-        Bookings = new ArrayList<FBooking>();
-        RegNumber = InRegNumber;
-        Model = InModel;
-        Color = InColor;
+        return Count;
     }
 
-    public Vehicle(Vehicle Other)
+    public boolean IsEmpty()
     {
-        Bookings = Other.Bookings;
-        RegNumber = Other.RegNumber;
-        Model = Other.Model;
-        Color = Other.Color;
+        return Count == 0;
     }
 
-    public String toString()
+    /** start dates are unique, so a hash of the key is as good a heap priority as a stored random one */
+    private int Priority(int Node)
     {
-        return Model + " (" + Color + ") " + "[" + RegNumber + "]";
+        long Value = From[Node] * 0x9E3779B97F4A7C15L;
+        Value ^= Value >>> 29;
+        return (int)(Value ^ (Value >>> 32));
     }
 
-    public boolean AddBooking(FBooking NewBooking)
+    public boolean CanFit(FDate HiredFrom, FDate HiredTo)
     {
-        int BookingIndex = FindNewBookingIndex(NewBooking.HiredFrom, NewBooking.HiredTo);
+        return CanFit(HiredFrom.ToInt64(), HiredTo.ToInt64());
+    }
+
+    public boolean CanFit(long NewFrom, long NewTo)
+    {
+        int Previous = None;
+        int Next = None;
 
-        if(BookingIndex != -1)
+        for(int Node = Root; Node != None;)
         {
-            Bookings.add(BookingIndex, NewBooking);
-            return true;
+            if(From[Node] <= NewFrom)
+            {
+                Previous = Node;
+                Node = Right[Node];
+            }
+            else
+            {
+                Next = Node;
+                Node = Left[Node];
+            }
         }
 
-        return false;
+        return (Previous == None || To[Previous] <= NewFrom) && (Next == None || From[Next] >= NewTo);
+    }
+
+    public boolean Add(FBooking NewBooking)
+    {
+        return Add(NewBooking.HiredFrom.ToInt64(), NewBooking.HiredTo.ToInt64());
     }
 
-    private int FindNewBookingIndex(FDate From, FDate To)
+    public boolean Add(long NewFrom, long NewTo)
     {
-        if(Bookings.isEmpty())
+        if(!CanFit(NewFrom, NewTo))
         {
-            return 0;
+            return false;
+        }
+
+        Unshare();
+
+        if(Count == From.length)
+        {
+            int Capacity = Math.max(4, Count * 2);
+            From = Arrays.copyOf(From, Capacity);
+            To = Arrays.copyOf(To, Capacity);
+            Left = Arrays.copyOf(Left, Capacity);
+            Right = Arrays.copyOf(Right, Capacity);
         }
 
-        for(int Index = 0; Index < Bookings.size(); ++Index)
+        int NewNode = Count++;
+        From[NewNode] = NewFrom;
+        To[NewNode] = NewTo;
+        Left[NewNode] = None;
+        Right[NewNode] = None;
+
+        Root = Insert(Root, NewNode);
+        return true;
+    }
+
+    private int Insert(int Node, int NewNode)
+    {
+        if(Node == None)
         {
-            FDate ExistingFrom = Bookings.get(Index).HiredFrom;
-            FDate ExistingTo = Bookings.get(Index).HiredTo;
+            return NewNode;
+        }
 
-            boolean CanFitBefore = ExistingFrom.MoreOrEqual(To) && ((Index == 0) || From.MoreOrEqual(Bookings.get(Index - 1).HiredTo));
-            boolean CanFitAfter = ExistingTo.LessOrEqual(From);
-            boolean CanFitBeforeNext = (Index == (Bookings.size() - 1)) || To.LessOrEqual(Bookings.get(Index + 1).HiredFrom);
+        if(From[NewNode] < From[Node])
+        {
+            Left[Node] = Insert(Left[Node], NewNode);
 
-            if(CanFitAfter && CanFitBeforeNext)
+            if(Priority(Left[Node]) > Priority(Node))
             {
-                return Index + 1;
+                int Child = Left[Node];
+                Left[Node] = Right[Child];
+                Right[Child] = Node;
+                return Child;
             }
-            else if(CanFitBefore)
+        }
+        else
+        {
+            Right[Node] = Insert(Right[Node], NewNode);
+
+            if(Priority(Right[Node]) > Priority(Node))
             {
-                return Index;
+                int Child = Right[Node];
+                Right[Node] = Left[Child];
+                Left[Child] = Node;
+                return Child;
             }
         }
 
-        return -1;
+        return Node;
     }
-}
 
-class Car extends Vehicle
-{
-    enum EGearMode
+    public boolean Remove(FBooking Booking)
     {
-        Manual,
-        Automatic
+        return Remove(Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64());
     }
 
-    public EGearMode GearMode;
-
-    public Car(String InModel, String InColor, String InRegNumber, EGearMode InGearMode)
+    /** only an exact match of both dates is removed, the last node then moves into the freed slot so the arrays stay dense */
+    public boolean Remove(long OldFrom, long OldTo)
     {
-        super(InModel, InColor, InRegNumber);
-        GearMode = InGearMode;
-    }
+        int Node = Find(OldFrom);
 
-    public Car(Vehicle Base, EGearMode InGearMode)
-    {
-        super(Base);
-        GearMode = InGearMode;
-    }
+        if(Node == None || To[Node] != OldTo)
+        {
+            return false;
+        }
 
-    public String toString()
-    {
-        return super.toString() + " " +  GearMode.name();
-    }
-}
+        Unshare();
+        Root = Delete(Root, OldFrom);
 
-class Bike extends Vehicle
-{
-    public int NumGears;
+        int Last = --Count;
 
-    public Bike(String InModel, String InColor, String InRegNumber, int InNumGears)
-    {
-        super(InModel, InColor, InRegNumber);
-        NumGears = InNumGears;
+        if(Node != Last)
+        {
+            From[Node] = From[Last];
+            To[Node] = To[Last];
+            Left[Node] = Left[Last];
+            Right[Node] = Right[Last];
+
+            if(Root == Last)
+            {
+                Root = Node;
+            }
+            else
+            {
+                //keys are unique, so the parent of the moved node is found by searching for its key
+                for(int Parent = Root;;)
+                {
+                    int[] Side = From[Node] < From[Parent] ? Left : Right;
+
+                    if(Side[Parent] == Last)
+                    {
+                        Side[Parent] = Node;
+                        break;
+                    }
+
+                    Parent = Side[Parent];
+                }
+            }
+        }
+
+        return true;
     }
 
-    public Bike(Vehicle Base, int InNumGears)
+    /** the old booking is put back when the new one does not fit, so either both happen or neither does */
+    public boolean Move(long OldFrom, long OldTo, long NewFrom, long NewTo)
     {
-        super(Base);
-        NumGears = InNumGears;
+        if(!Remove(OldFrom, OldTo))
+        {
+            return false;
+        }
+
+        if(Add(NewFrom, NewTo))
+        {
+            return true;
+        }
+
+        Add(OldFrom, OldTo);
+        return false;
     }
 
-    public String toString()
+    /**
+    free stretches of the vehicle from NotBefore on in date order, as epoch days with the end exclusive
+    the last one never ends, so there is always a stretch long enough
+    */
+    public final class FGapCursor
     {
-        return super.toString() + " " + NumGears + " gears";
-    }
-}
+        public final int FleetId;
+        public int Start;
+        public int End;
 
-class Lorry extends Vehicle
-{
-    public float MaxLoad;
+        private final PrimitiveIterator.OfInt Nodes;
+        private int Upcoming = None;
 
-    public Lorry(String InModel, String InColor, String InRegNumber, float InMaxLoad)
-    {
-        super(InModel, InColor, InRegNumber);
-        MaxLoad = InMaxLoad;
+        private FGapCursor(long NotBefore, int FleetId)
+        {
+            this.FleetId = FleetId;
+            Start = FDate.EpochDayOf(NotBefore);
+
+            int Previous = None;
+
+            for(int Node = Root; Node != None;)
+            {
+                Previous = From[Node] <= NotBefore ? Node : Previous;
+                Node = From[Node] <= NotBefore ? Right[Node] : Left[Node];
+            }
+
+            if(Previous != None && To[Previous] > NotBefore)
+            {
+                Start = FDate.EpochDayOf(To[Previous]);
+            }
+
+            Nodes = InOrder(NotBefore + 1);
+            CloseGap();
+
+            if(End == Start)
+            {
+                Next();
+            }
+        }
+
+        private void CloseGap()
+        {
+            Upcoming = Nodes.hasNext() ? Nodes.nextInt() : None;
+            End = Upcoming != None ? FDate.EpochDayOf(From[Upcoming]) : Integer.MAX_VALUE;
+        }
+
+        public boolean Fits(int NumDays)
+        {
+            return (long)End - Start >= NumDays;
+        }
+
+        /** skips to the stretch after the next booking, back to back bookings leave none between them */
+        public boolean Next()
+        {
+            do
+            {
+                if(Upcoming == None)
+                {
+                    return false;
+                }
+
+                Start = FDate.EpochDayOf(To[Upcoming]);
+                CloseGap();
+            }
+            while(End == Start);
+
+            return true;
+        }
     }
 
-    public Lorry(Vehicle Base, float InMaxLoad)
+    /** FleetId only tells the cursors of different vehicles apart */
+    public FGapCursor Gaps(long NotBefore, int FleetId)
     {
-        super(Base);
-        MaxLoad = InMaxLoad;
+        return new FGapCursor(NotBefore, FleetId);
     }
 
-    public String toString()
+    /** packed start of the earliest NumDays long stretch from NotBefore on, walking the bookings after it once */
+    public long FindFirstFit(long NotBefore, int NumDays)
     {
-        return super.toString() + " " + MaxLoad + " tonnes";
-    }
-}
+        FGapCursor Gap = Gaps(NotBefore, -1);
 
-class VehicleSearchThread extends Thread
-{
-    VehicleManager Context;
-    String SearchInput;
-    String TypeOption;
+        while(!Gap.Fits(NumDays))
+        {
+            Gap.Next();
+        }
 
-    VehicleSearchThread(VehicleManager Context, String SearchInput, String TypeOption)
-    {
-        this.Context = Context;
-        this.SearchInput = SearchInput;
-        this.TypeOption = TypeOption;
-        setDaemon(true);
+        return FDate.PackEpochDay(Gap.Start);
     }
 
-    public void run()
+    private int Find(long Key)
     {
-        DefaultListModel<Vehicle> SortedCars = Context.SearchVehicles(SearchInput, TypeOption);
+        int Node = Root;
 
-        synchronized(Context.VehicleList)
+        while(Node != None && From[Node] != Key)
         {
-            Context.VehicleList.setModel(SortedCars);
+            Node = Key < From[Node] ? Left[Node] : Right[Node];
         }
+
+        return Node;
     }
-}
 
-public class VehicleManager implements ActionListener, ListSelectionListener, KeyListener, WindowListener
-{
-    /** vars */
-    private File VehicleFile;
-    private JFrame Frame;
-    public JList<Vehicle> VehicleList;
-    private int SelectedVehicleIndex = -1;
-    private DefaultListModel<Vehicle> VehicleArray;
-    private JScrollPane CarPane;
-    private JTextField SearchField;
-    private JList<String> TypeList;
-    private DefaultListModel<String> TypeArray;
-    private JPanel SearchPanel;
-    private JTextArea InfoArea;
-    private JPanel InfoPanel;
-    private JButton InfoClose;
-    private JTextField AddBookingField_From;
-    private JTextField AddBookingField_To;
-    private JPanel AddBookingPanel;
-    private JButton TryBookButton;
+    private int Delete(int Node, long Key)
+    {
+        if(Key < From[Node])
+        {
+            Left[Node] = Delete(Left[Node], Key);
+            return Node;
+        }
 
-    private VehicleSearchThread SearchThread;
-    /** end vars */
+        if(Key > From[Node])
+        {
+            Right[Node] = Delete(Right[Node], Key);
+            return Node;
+        }
 
-    public VehicleManager(int NumToGenerate, File VehicleFile) throws IOException
-    {
-        SearchThread = null;
-        this.VehicleFile = VehicleFile;
-        StartWindow(NumToGenerate);
+        return Join(Left[Node], Right[Node]);
     }
 
-    @Override public void actionPerformed(ActionEvent Event)
+    /** every key under Lower is less than every key under Upper */
+    private int Join(int Lower, int Upper)
     {
-        if(Event.getSource() == InfoClose)
+        if(Lower == None || Upper == None)
         {
-            OnCloseInfo();
+            return Lower == None ? Upper : Lower;
         }
-        else if(Event.getSource() == TryBookButton)
+
+        if(Priority(Lower) > Priority(Upper))
         {
-            OnTryBook();
+            Right[Lower] = Join(Right[Lower], Upper);
+            return Lower;
         }
+
+        Left[Upper] = Join(Lower, Left[Upper]);
+        return Upper;
     }
 
-    @Override public void valueChanged(ListSelectionEvent Event)
+    /**
+    merges bookings sorted by start into the index in one linear pass and rebuilds the treap bottom up
+    a booking overlapping one already there, or an earlier one of the batch, is left out and not marked in Accepted
+    */
+    public int AddSorted(long[] NewFrom, long[] NewTo, int NumNew, boolean[] Accepted)
     {
-        if(!Event.getValueIsAdjusting())
+        long[] Existing = ToPackedArray();
+        int NumExisting = Count;
+        int Capacity = Math.max(4, NumExisting + NumNew);
+
+        long[] MergedFrom = new long[Capacity];
+        long[] MergedTo = new long[Capacity];
+        int NumMerged = 0;
+        int NumAdded = 0;
+        long LastTo = Long.MIN_VALUE;
+
+        for(int ExistingIndex = 0, NewIndex = 0; ExistingIndex < NumExisting || NewIndex < NumNew;)
         {
-            if(Event.getSource() == VehicleList && VehicleList.getSelectedIndex() != -1)
+            if(NewIndex == NumNew || (ExistingIndex < NumExisting && Existing[ExistingIndex * 2] <= NewFrom[NewIndex]))
             {
-                DisplayCar(VehicleList.getSelectedIndex());
+                MergedFrom[NumMerged] = Existing[ExistingIndex * 2];
+                MergedTo[NumMerged++] = Existing[ExistingIndex * 2 + 1];
+                LastTo = Existing[ExistingIndex * 2 + 1];
+                ++ExistingIndex;
+                continue;
             }
-            else if(Event.getSource() == TypeList)
+
+            //has to end before the next booking already there starts, which is always kept
+            boolean Fits = NewFrom[NewIndex] < NewTo[NewIndex] && NewFrom[NewIndex] >= LastTo
+            && (ExistingIndex == NumExisting || NewTo[NewIndex] <= Existing[ExistingIndex * 2]);
+
+            Accepted[NewIndex] = Fits;
+
+            if(Fits)
             {
-                AsyncSearch();
+                MergedFrom[NumMerged] = NewFrom[NewIndex];
+                MergedTo[NumMerged++] = NewTo[NewIndex];
+                LastTo = NewTo[NewIndex];
+                ++NumAdded;
             }
+
+            ++NewIndex;
         }
+
+        From = MergedFrom;
+        To = MergedTo;
+        Left = new int[Capacity];
+        Right = new int[Capacity];
+        Count = NumMerged;
+        Root = BuildFromSorted();
+        Shared = false;
+        return NumAdded;
+    }
+
+    /** treap over nodes already in key order, the right spine sits on a stack so every node is pushed and popped once */
+    private int BuildFromSorted()
+    {
+        int[] Spine = new int[Math.max(1, Count)];
+        int Depth = 0;
+
+        for(int Node = 0; Node < Count; ++Node)
+        {
+            int Last = None;
+
+            while(Depth != 0 && Priority(Spine[Depth - 1]) < Priority(Node))
+            {
+                Last = Spine[--Depth];
+            }
+
+            Left[Node] = Last;
+            Right[Node] = None;
+
+            if(Depth != 0)
+            {
+                Right[Spine[Depth - 1]] = Node;
+            }
+
+            Spine[Depth++] = Node;
+        }
+
+        return Depth != 0 ? Spine[0] : None;
+    }
+
+    /** copy on write, both indexes share the arrays until one of them changes */
+    public FBookingIndex Copy()
+    {
+        FBookingIndex Result = new FBookingIndex(0);
+        Result.From = From;
+        Result.To = To;
+        Result.Left = Left;
+        Result.Right = Right;
+        Result.Root = Root;
+        Result.Count = Count;
+        Result.Shared = true;
+        Shared = true;
+        return Result;
+    }
+
+    private void Unshare()
+    {
+        if(Shared)
+        {
+            From = Arrays.copyOf(From, From.length);
+            To = Arrays.copyOf(To, To.length);
+            Left = Arrays.copyOf(Left, Left.length);
+            Right = Arrays.copyOf(Right, Right.length);
+            Shared = false;
+        }
+    }
+
+    /** from/to pairs interleaved in chronological order */
+    public long[] ToPackedArray()
+    {
+        long[] Result = new long[Count * 2];
+        int Index = 0;
+
+        for(PrimitiveIterator.OfInt Nodes = InOrder(); Nodes.hasNext();)
+        {
+            int Node = Nodes.nextInt();
+            Result[Index++] = From[Node];
+            Result[Index++] = To[Node];
+        }
+
+        return Result;
+    }
+
+    private PrimitiveIterator.OfInt InOrder()
+    {
+        return InOrder(Long.MIN_VALUE);
+    }
+
+    /** nodes starting at Key or later, the stack starts out as the path down to the first of them */
+    private PrimitiveIterator.OfInt InOrder(long Key)
+    {
+        return new PrimitiveIterator.OfInt()
+        {
+            private int[] Stack = new int[16];
+            private int Depth = 0;
+            private int Node = None;
+
+            {
+                for(int Next = Root; Next != None; Next = From[Next] >= Key ? Left[Next] : Right[Next])
+                {
+                    if(From[Next] >= Key)
+                    {
+                        Push(Next);
+                    }
+                }
+            }
+
+            private void Push(int Next)
+            {
+                if(Depth == Stack.length)
+                {
+                    Stack = Arrays.copyOf(Stack, Depth * 2);
+                }
+
+                Stack[Depth++] = Next;
+            }
+
+            @Override public boolean hasNext()
+            {
+                return Node != None || Depth != 0;
+            }
+
+            @Override public int nextInt()
+            {
+                while(Node != None)
+                {
+                    Push(Node);
+                    Node = Left[Node];
+                }
+
+                if(Depth == 0)
+                {
+                    throw new NoSuchElementException();
+                }
+
+                int Result = Stack[--Depth];
+                Node = Right[Result];
+                return Result;
+            }
+        };
+    }
+
+    @Override public Iterator<FBooking> iterator()
+    {
+        PrimitiveIterator.OfInt Nodes = InOrder();
+
+        return new Iterator<FBooking>()
+        {
+            @Override public boolean hasNext()
+            {
+                return Nodes.hasNext();
+            }
+
+            @Override public FBooking next()
+            {
+                int Node = Nodes.nextInt();
+                return new FBooking(FDate.FromInt64(From[Node]), FDate.FromInt64(To[Node]));
+            }
+        };
+    }
+}
+
+/** the fleet a vehicle belongs to, every field change goes through it so the fleet wide indexes follow */
+interface IVehicleOwner
+{
+    /** false when another vehicle of the fleet already has the plate */
+    boolean CanTakeRegNumber(Vehicle Target, String RegNumber);
+
+    /** runs Apply, which changes fields of Target, and brings every index up to date with the result */
+    void Change(Vehicle Target, Runnable Apply);
+}
+
+class Vehicle extends Object
+{
+    public FBookingIndex Bookings;
+    public FBookingIndex GetBookings() {return Bookings;}
+
+    /** change these through the setters so the cached strings are rebuilt and the fleet indexes are told */
+    public String RegNumber;
+    public String Model;
+    public String Color;
+
+    private String DisplayString;
+    private String SearchKey;
+
+    /** position in the fleet, shared by every fleet wide index, -1 until added */
+    public int FleetId = -1;
+
+    /** set when the vehicle joins a fleet, snapshots do not belong to one */
+    IVehicleOwner Owner;
+
+    /** the save whose cut this vehicle was last copied for, see BookingService.BeginSnapshot */
+    long SnapshotEpoch;
+
+    static final public ArrayList<String> Models = InitModels();
+    static final public ArrayList<String> Colors = InitColors();
+
+    static private ArrayList<String> InitModels()
+    {
+        ArrayList<String> Result = new ArrayList<String>();
+        Result.add("Ford");
+        Result.add("Lamborghini");
+        Result.add("Volvo");
+        Result.add("BMW");
+        Result.add("Ferrari");
+        Result.add("Peugeot");
+        return Result;
+    }
+
+    static private ArrayList<String> InitColors()
+    {
+        ArrayList<String> Result = new ArrayList<String>();
+        Result.add("Red");
+        Result.add("Black");
+        Result.add("White");
+        Result.add("Pink");
+        Result.add("Brown");
+        Result.add("Blue");
+        return Result;
+    }
+
+    /** one shared instance per distinct model or color name, seeded with the known ones */
+    static private final ConcurrentHashMap<String, String> SharedNames = InitSharedNames();
+
+    static private ConcurrentHashMap<String, String> InitSharedNames()
+    {
+        ConcurrentHashMap<String, String> Result = new ConcurrentHashMap<String, String>();
+
+        for(String Name : Models)
+        {
+            Result.put(Name, Name);
+        }
+
+        for(String Name : Colors)
+        {
+            Result.put(Name, Name);
+        }
+
+        return Result;
+    }
+
+    static public String ShareName(String Name)
+    {
+        String Existing = SharedNames.putIfAbsent(Name, Name);
+        return Existing != null ? Existing : Name;
+    }
+
+    public Vehicle(String InModel, String InColor, String InRegNumber)
+    {
+        Bookings = new FBookingIndex();
+        RegNumber = InRegNumber;
+        Model = ShareName(InModel);
+        Color = ShareName(InColor);
+    }
+
+    public Vehicle(Vehicle Other)
+    {
+        Bookings = Other.Bookings;
+        RegNumber = Other.RegNumber;
+        Model = Other.Model;
+        Color = Other.Color;
+        FleetId = Other.FleetId;
+    }
+
+    /** built once and kept until a field changes, it is asked for on every paint, search and save */
+    public final String toString()
+    {
+        String Result = DisplayString;
+
+        if(Result == null)
+        {
+            Result = BuildDisplayString();
+            DisplayString = Result;
+        }
+
+        return Result;
+    }
+
+    public final String SearchKey()
+    {
+        String Result = SearchKey;
+
+        if(Result == null)
+        {
+            Result = toString().toUpperCase();
+            SearchKey = Result;
+        }
+
+        return Result;
+    }
+
+    protected String BuildDisplayString()
+    {
+        return Model + " (" + Color + ") " + "[" + RegNumber + "]";
+    }
+
+    protected void InvalidateStrings()
+    {
+        DisplayString = null;
+        SearchKey = null;
+    }
+
+    /** the strings only depend on fields a snapshot copies as they are */
+    protected Vehicle KeepCachedStrings(Vehicle Copy)
+    {
+        Copy.DisplayString = DisplayString;
+        Copy.SearchKey = SearchKey;
+        return Copy;
+    }
+
+    protected void Change(Runnable Update)
+    {
+        Runnable Apply = () ->
+        {
+            Update.run();
+            InvalidateStrings();
+        };
+
+        if(Owner != null)
+        {
+            Owner.Change(this, Apply);
+        }
+        else
+        {
+            Apply.run();
+        }
+    }
+
+    /** IllegalArgumentException if another vehicle of the fleet has the plate already */
+    public void SetRegNumber(String InRegNumber)
+    {
+        if(Owner != null && !Owner.CanTakeRegNumber(this, InRegNumber))
+        {
+            throw new IllegalArgumentException("registration number " + InRegNumber + " is already in the fleet");
+        }
+
+        Change(() -> RegNumber = InRegNumber);
+    }
+
+    public void SetModel(String InModel)
+    {
+        Change(() -> Model = ShareName(InModel));
+    }
+
+    public void SetColor(String InColor)
+    {
+        Change(() -> Color = ShareName(InColor));
+    }
+
+    /** not thread safe, vehicles shared between threads are booked through BookingService */
+    public boolean AddBooking(FBooking NewBooking)
+    {
+        return Bookings.Add(NewBooking);
+    }
+
+    /** false unless a booking with exactly these dates exists */
+    public boolean CancelBooking(FBooking Booking)
+    {
+        return Bookings.Remove(Booking);
+    }
+
+    /** false and nothing changed if Booking does not exist or NewBooking would overlap another booking */
+    public boolean MoveBooking(FBooking Booking, FBooking NewBooking)
+    {
+        return Bookings.Move(Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64(), NewBooking.HiredFrom.ToInt64(), NewBooking.HiredTo.ToInt64());
+    }
+
+    /** copy that does not share bookings with this vehicle */
+    public Vehicle Snapshot()
+    {
+        return KeepCachedStrings(SnapshotBase());
+    }
+
+    protected Vehicle SnapshotBase()
+    {
+        Vehicle Base = new Vehicle(this);
+        Base.Bookings = Bookings.Copy();
+        return Base;
+    }
+}
+
+class Car extends Vehicle
+{
+    enum EGearMode
+    {
+        Manual,
+        Automatic
+    }
+
+    public EGearMode GearMode;
+
+    public Car(String InModel, String InColor, String InRegNumber, EGearMode InGearMode)
+    {
+        super(InModel, InColor, InRegNumber);
+        GearMode = InGearMode;
+    }
+
+    public Car(Vehicle Base, EGearMode InGearMode)
+    {
+        super(Base);
+        GearMode = InGearMode;
+    }
+
+    @Override protected String BuildDisplayString()
+    {
+        return super.BuildDisplayString() + " " +  GearMode.name();
+    }
+
+    public void SetGearMode(EGearMode InGearMode)
+    {
+        Change(() -> GearMode = InGearMode);
+    }
+
+    @Override public Vehicle Snapshot()
+    {
+        return KeepCachedStrings(new Car(SnapshotBase(), GearMode));
+    }
+}
+
+class Bike extends Vehicle
+{
+    public int NumGears;
+
+    public Bike(String InModel, String InColor, String InRegNumber, int InNumGears)
+    {
+        super(InModel, InColor, InRegNumber);
+        NumGears = InNumGears;
+    }
+
+    public Bike(Vehicle Base, int InNumGears)
+    {
+        super(Base);
+        NumGears = InNumGears;
+    }
+
+    @Override protected String BuildDisplayString()
+    {
+        return super.BuildDisplayString() + " " + NumGears + " gears";
+    }
+
+    public void SetNumGears(int InNumGears)
+    {
+        Change(() -> NumGears = InNumGears);
+    }
+
+    @Override public Vehicle Snapshot()
+    {
+        return KeepCachedStrings(new Bike(SnapshotBase(), NumGears));
+    }
+}
+
+class Lorry extends Vehicle
+{
+    public float MaxLoad;
+
+    public Lorry(String InModel, String InColor, String InRegNumber, float InMaxLoad)
+    {
+        super(InModel, InColor, InRegNumber);
+        MaxLoad = InMaxLoad;
+    }
+
+    public Lorry(Vehicle Base, float InMaxLoad)
+    {
+        super(Base);
+        MaxLoad = InMaxLoad;
+    }
+
+    @Override protected String BuildDisplayString()
+    {
+        return super.BuildDisplayString() + " " + MaxLoad + " tonnes";
+    }
+
+    public void SetMaxLoad(float InMaxLoad)
+    {
+        Change(() -> MaxLoad = InMaxLoad);
+    }
+
+    @Override public Vehicle Snapshot()
+    {
+        return KeepCachedStrings(new Lorry(SnapshotBase(), MaxLoad));
+    }
+}
+
+/** structure of arrays copy of the fleet split into one segment per type, the vehicle objects stay around as row views */
+final class FleetColumnStore
+{
+    /** dictionary encoding for models and colors, lookups ignore case */
+    static final class FDictionary
+    {
+        private final ArrayList<String> Names = new ArrayList<String>();
+        private final HashMap<String, Short> Ids = new HashMap<String, Short>();
+
+        public int Size()
+        {
+            return Names.size();
+        }
+
+        public String NameOf(int Id)
+        {
+            return Names.get(Id);
+        }
+
+        /** -1 when the name has never been stored */
+        public int IdOf(String Name)
+        {
+            Short Id = Ids.get(Name.toUpperCase());
+            return Id != null ? Id : -1;
+        }
+
+        public short IdOrAdd(String Name)
+        {
+            String Key = Name.toUpperCase();
+            Short Id = Ids.get(Key);
+
+            if(Id == null)
+            {
+                if(Names.size() > Short.MAX_VALUE)
+                {
+                    throw new IllegalStateException("too many distinct names for a dictionary column: " + Name);
+                }
+
+                Id = (short)Names.size();
+                Names.add(Name);
+                Ids.put(Key, Id);
+            }
+
+            return Id;
+        }
+    }
+
+    /** columns every type has, fleet ids come in ascending because vehicles are only ever appended */
+    static class FSegment
+    {
+        public int Size = 0;
+        public int[] FleetIds = new int[16];
+        public short[] ModelIds = new short[16];
+        public short[] ColorIds = new short[16];
+        public String[] RegNumbers = new String[16];
+
+        /** rows per dictionary id, what the query planner uses to guess how selective a model or color is */
+        private int[] ModelCounts = new int[0];
+        private int[] ColorCounts = new int[0];
+
+        private static int[] Count(int[] Counts, int Id)
+        {
+            Counts = Id < Counts.length ? Counts : Arrays.copyOf(Counts, Id + 1);
+            ++Counts[Id];
+            return Counts;
+        }
+
+        public int ModelCount(int ModelId)
+        {
+            return ModelId < ModelCounts.length ? ModelCounts[ModelId] : 0;
+        }
+
+        public int ColorCount(int ColorId)
+        {
+            return ColorId < ColorCounts.length ? ColorCounts[ColorId] : 0;
+        }
+
+        protected void Grow(int NewCapacity)
+        {
+            FleetIds = Arrays.copyOf(FleetIds, NewCapacity);
+            ModelIds = Arrays.copyOf(ModelIds, NewCapacity);
+            ColorIds = Arrays.copyOf(ColorIds, NewCapacity);
+            RegNumbers = Arrays.copyOf(RegNumbers, NewCapacity);
+        }
+
+        protected void SetSpecial(int Row, Vehicle Source)
+        {
+        }
+
+        int Append(Vehicle Source, short ModelId, short ColorId)
+        {
+            if(Size == FleetIds.length)
+            {
+                Grow(Size * 2);
+            }
+
+            int Row = Size;
+            FleetIds[Row] = Source.FleetId;
+            ModelIds[Row] = ModelId;
+            ColorIds[Row] = ColorId;
+            RegNumbers[Row] = Source.RegNumber;
+            SetSpecial(Row, Source);
+            ModelCounts = Count(ModelCounts, ModelId);
+            ColorCounts = Count(ColorCounts, ColorId);
+            Size = Row + 1;
+            return Row;
+        }
+
+        /** rewrites a row after the vehicle changed, the fleet id stays */
+        void Set(int Row, Vehicle Source, short ModelId, short ColorId)
+        {
+            --ModelCounts[ModelIds[Row]];
+            --ColorCounts[ColorIds[Row]];
+            ModelIds[Row] = ModelId;
+            ColorIds[Row] = ColorId;
+            RegNumbers[Row] = Source.RegNumber;
+            SetSpecial(Row, Source);
+            ModelCounts = Count(ModelCounts, ModelId);
+            ColorCounts = Count(ColorCounts, ColorId);
+        }
+
+        /** fleet ids of the rows the test accepts, ascending */
+        protected int[] Select(IntPredicate Accept)
+        {
+            int NumRows = Size;
+            int[] Result = new int[NumRows];
+            int NumResults = 0;
+
+            for(int Row = 0; Row < NumRows; ++Row)
+            {
+                if(Accept.test(Row))
+                {
+                    Result[NumResults++] = FleetIds[Row];
+                }
+            }
+
+            return Arrays.copyOf(Result, NumResults);
+        }
+
+        public int[] SelectAll()
+        {
+            return Arrays.copyOf(FleetIds, Size);
+        }
+
+        /** -1 for either id matches anything */
+        public int[] SelectByModelColor(int ModelId, int ColorId)
+        {
+            final short[] Models = ModelIds;
+            final short[] Colors = ColorIds;
+            return Select(Row -> (ModelId < 0 || Models[Row] == ModelId) && (ColorId < 0 || Colors[Row] == ColorId));
+        }
+    }
+
+    static final class FCarSegment extends FSegment
+    {
+        public byte[] GearModes = new byte[16];
+
+        @Override protected void Grow(int NewCapacity)
+        {
+            super.Grow(NewCapacity);
+            GearModes = Arrays.copyOf(GearModes, NewCapacity);
+        }
+
+        @Override protected void SetSpecial(int Row, Vehicle Source)
+        {
+            GearModes[Row] = (byte)((Car)Source).GearMode.ordinal();
+        }
+
+        public int[] SelectGearMode(Car.EGearMode Mode)
+        {
+            final byte[] Modes = GearModes;
+            final byte Wanted = (byte)Mode.ordinal();
+            return Select(Row -> Modes[Row] == Wanted);
+        }
+    }
+
+    static final class FBikeSegment extends FSegment
+    {
+        public int[] NumGears = new int[16];
+
+        @Override protected void Grow(int NewCapacity)
+        {
+            super.Grow(NewCapacity);
+            NumGears = Arrays.copyOf(NumGears, NewCapacity);
+        }
+
+        @Override protected void SetSpecial(int Row, Vehicle Source)
+        {
+            NumGears[Row] = ((Bike)Source).NumGears;
+        }
+
+        /** bounds are inclusive */
+        public int[] SelectGears(int Min, int Max)
+        {
+            final int[] Gears = NumGears;
+            return Select(Row -> Gears[Row] >= Min && Gears[Row] <= Max);
+        }
+    }
+
+    static final class FLorrySegment extends FSegment
+    {
+        public float[] MaxLoads = new float[16];
+
+        @Override protected void Grow(int NewCapacity)
+        {
+            super.Grow(NewCapacity);
+            MaxLoads = Arrays.copyOf(MaxLoads, NewCapacity);
+        }
+
+        @Override protected void SetSpecial(int Row, Vehicle Source)
+        {
+            MaxLoads[Row] = ((Lorry)Source).MaxLoad;
+        }
+
+        /** bounds are inclusive */
+        public int[] SelectLoad(float Min, float Max)
+        {
+            final float[] Loads = MaxLoads;
+            return Select(Row -> Loads[Row] >= Min && Loads[Row] <= Max);
+        }
+    }
+
+    public final FDictionary Models = new FDictionary();
+    public final FDictionary Colors = new FDictionary();
+
+    public final FCarSegment Cars = new FCarSegment();
+    public final FBikeSegment Bikes = new FBikeSegment();
+    public final FLorrySegment Lorries = new FLorrySegment();
+
+    /** indexed by the binary store type codes */
+    private final FSegment[] Segments = {Cars, Bikes, Lorries};
+
+    /** per fleet id, which segment and which row the vehicle lives in */
+    private byte[] TypeCodes = new byte[16];
+    private int[] Rows = new int[16];
+    private int NumVehicles = 0;
+
+    /** -1 for anything that is not one of the known types */
+    public static byte TypeCodeOf(String TypeName)
+    {
+        return switch(TypeName)
+        {
+            case "Car" -> FleetBinaryStore.TypeCar;
+            case "Bike" -> FleetBinaryStore.TypeBike;
+            case "Lorry" -> FleetBinaryStore.TypeLorry;
+            default -> -1;
+        };
+    }
+
+    public static byte TypeCodeOf(Vehicle Source)
+    {
+        if(Source instanceof Car)
+        {
+            return FleetBinaryStore.TypeCar;
+        }
+        else if(Source instanceof Bike)
+        {
+            return FleetBinaryStore.TypeBike;
+        }
+        else if(Source instanceof Lorry)
+        {
+            return FleetBinaryStore.TypeLorry;
+        }
+
+        return -1;
+    }
+
+    public int Size()
+    {
+        return NumVehicles;
+    }
+
+    /** null for an unknown type code */
+    public FSegment Segment(int TypeCode)
+    {
+        return TypeCode >= 0 && TypeCode < Segments.length ? Segments[TypeCode] : null;
+    }
+
+    public byte TypeCodeAt(int FleetId)
+    {
+        return TypeCodes[FleetId];
+    }
+
+    public int RowAt(int FleetId)
+    {
+        return Rows[FleetId];
+    }
+
+    /** the vehicle must already have its fleet id, which has to be the next one */
+    public void Add(Vehicle NewVehicle)
+    {
+        byte TypeCode = TypeCodeOf(NewVehicle);
+
+        if(TypeCode < 0)
+        {
+            throw new IllegalArgumentException("no column segment for " + NewVehicle.getClass().getName());
+        }
+
+        if(NewVehicle.FleetId != NumVehicles)
+        {
+            throw new IllegalArgumentException("fleet id " + NewVehicle.FleetId + " added out of order, expected " + NumVehicles);
+        }
+
+        if(NumVehicles == TypeCodes.length)
+        {
+            TypeCodes = Arrays.copyOf(TypeCodes, NumVehicles * 2);
+            Rows = Arrays.copyOf(Rows, NumVehicles * 2);
+        }
+
+        TypeCodes[NumVehicles] = TypeCode;
+        Rows[NumVehicles] = Segments[TypeCode].Append(NewVehicle, Models.IdOrAdd(NewVehicle.Model), Colors.IdOrAdd(NewVehicle.Color));
+        ++NumVehicles;
+    }
+
+    /** copies the fields of a vehicle already in the store back into its row, a vehicle cannot change its type */
+    public void Update(Vehicle Changed)
+    {
+        Segments[TypeCodes[Changed.FleetId]].Set(Rows[Changed.FleetId], Changed, Models.IdOrAdd(Changed.Model), Colors.IdOrAdd(Changed.Color));
+    }
+}
+
+/** registration number to fleet id, standard "ABC 123" plates live in an open addressing table keyed on a packed long */
+final class FleetPlateIndex
+{
+    static final long NotPacked = -1;
+    private static final long EmptyKey = -1;
+
+    private long[] Keys = NewKeys(16);
+    private int[] FleetIds = new int[16];
+    private int NumPacked = 0;
+
+    /** anything loaded from a file that does not follow the standard layout */
+    private final HashMap<String, Integer> Irregular = new HashMap<String, Integer>();
+
+    private static long[] NewKeys(int Capacity)
+    {
+        long[] Result = new long[Capacity];
+        Arrays.fill(Result, EmptyKey);
+        return Result;
+    }
+
+    /** three upper case letters, a space and three digits, or NotPacked for anything else */
+    public static long Pack(CharSequence Plate)
+    {
+        if(Plate.length() != 7 || Plate.charAt(3) != ' ')
+        {
+            return NotPacked;
+        }
+
+        long Result = 0;
+
+        for(int Index = 0; Index < 3; ++Index)
+        {
+            char Letter = Plate.charAt(Index);
+
+            if(Letter < 'A' || Letter > 'Z')
+            {
+                return NotPacked;
+            }
+
+            Result = Result * 26 + (Letter - 'A');
+        }
+
+        for(int Index = 4; Index < 7; ++Index)
+        {
+            char Digit = Plate.charAt(Index);
+
+            if(Digit < '0' || Digit > '9')
+            {
+                return NotPacked;
+            }
+
+            Result = Result * 10 + (Digit - '0');
+        }
+
+        return Result;
+    }
+
+    private int SlotOf(long Key)
+    {
+        int Mask = Keys.length - 1;
+        int Slot = (int)((Key * 0x9E3779B97F4A7C15L) >>> 40) & Mask;
+
+        while(Keys[Slot] != EmptyKey && Keys[Slot] != Key)
+        {
+            Slot = (Slot + 1) & Mask;
+        }
+
+        return Slot;
+    }
+
+    public int Size()
+    {
+        return NumPacked + Irregular.size();
+    }
+
+    /** fleet id of the plate, -1 if there is none */
+    public int Find(CharSequence Plate)
+    {
+        long Key = Pack(Plate);
+
+        if(Key == NotPacked)
+        {
+            Integer FleetId = Irregular.get(Plate.toString());
+            return FleetId != null ? FleetId : -1;
+        }
+
+        int Slot = SlotOf(Key);
+        return Keys[Slot] == Key ? FleetIds[Slot] : -1;
+    }
+
+    /** false and no change if the plate is already taken */
+    public boolean Add(String Plate, int FleetId)
+    {
+        long Key = Pack(Plate);
+
+        if(Key == NotPacked)
+        {
+            return Irregular.putIfAbsent(Plate, FleetId) == null;
+        }
+
+        int Slot = SlotOf(Key);
+
+        if(Keys[Slot] == Key)
+        {
+            return false;
+        }
+
+        Keys[Slot] = Key;
+        FleetIds[Slot] = FleetId;
+
+        //kept at most half full so probe runs stay short
+        if(++NumPacked * 2 > Keys.length)
+        {
+            Grow();
+        }
+
+        return true;
+    }
+
+    /** false if the plate is not there, the probe run after the freed slot is shifted back so lookups never stop early */
+    public boolean Remove(String Plate)
+    {
+        long Key = Pack(Plate);
+
+        if(Key == NotPacked)
+        {
+            return Irregular.remove(Plate) != null;
+        }
+
+        int Slot = SlotOf(Key);
+
+        if(Keys[Slot] != Key)
+        {
+            return false;
+        }
+
+        int Mask = Keys.length - 1;
+
+        for(int Next = (Slot + 1) & Mask; Keys[Next] != EmptyKey; Next = (Next + 1) & Mask)
+        {
+            int Home = (int)((Keys[Next] * 0x9E3779B97F4A7C15L) >>> 40) & Mask;
+
+            //the entry may fill the hole unless its home lies cyclically after the hole and at or before itself
+            if(((Next - Home) & Mask) >= ((Next - Slot) & Mask))
+            {
+                Keys[Slot] = Keys[Next];
+                FleetIds[Slot] = FleetIds[Next];
+                Slot = Next;
+            }
+        }
+
+        Keys[Slot] = EmptyKey;
+        --NumPacked;
+        return true;
+    }
+
+    private void Grow()
+    {
+        long[] OldKeys = Keys;
+        int[] OldFleetIds = FleetIds;
+
+        Keys = NewKeys(OldKeys.length * 2);
+        FleetIds = new int[OldKeys.length * 2];
+
+        for(int Index = 0; Index < OldKeys.length; ++Index)
+        {
+            if(OldKeys[Index] != EmptyKey)
+            {
+                int Slot = SlotOf(OldKeys[Index]);
+                Keys[Slot] = OldKeys[Index];
+                FleetIds[Slot] = OldFleetIds[Index];
+            }
+        }
+    }
+}
+
+/** trigram inverted index over the search key of every vehicle, ids are insertion order */
+final class VehicleSearchIndex
+{
+    static final class FPostingList
+    {
+        public int[] Ids = new int[4];
+        public int Size = 0;
+
+        public void Add(int Id)
+        {
+            if(Size != 0 && Ids[Size - 1] == Id)
+            {
+                return;
+            }
+
+            if(Size == Ids.length)
+            {
+                Ids = Arrays.copyOf(Ids, Size * 2);
+            }
+
+            Ids[Size++] = Id;
+        }
+
+        /** keeps the ids ascending, for a vehicle whose key changed after later ones were added */
+        public void Insert(int Id)
+        {
+            int Index = Arrays.binarySearch(Ids, 0, Size, Id);
+
+            if(Index >= 0)
+            {
+                return;
+            }
+
+            Index = -Index - 1;
+
+            if(Size == Ids.length)
+            {
+                Ids = Arrays.copyOf(Ids, Size * 2);
+            }
+
+            System.arraycopy(Ids, Index, Ids, Index + 1, Size - Index);
+            Ids[Index] = Id;
+            ++Size;
+        }
+
+        public void Remove(int Id)
+        {
+            int Index = Arrays.binarySearch(Ids, 0, Size, Id);
+
+            if(Index >= 0)
+            {
+                System.arraycopy(Ids, Index + 1, Ids, Index, Size - Index - 1);
+                --Size;
+            }
+        }
+    }
+
+    private final HashMap<Long, FPostingList> Postings = new HashMap<Long, FPostingList>();
+    private final ArrayList<String> Keys = new ArrayList<String>();
+    private final FleetColumnStore Columns;
+
+    /** the type of every id is looked up in the column store, so vehicles go in there first */
+    public VehicleSearchIndex(FleetColumnStore InColumns)
+    {
+        Columns = InColumns;
+    }
+
+    private static long PackTrigram(String Source, int Offset)
+    {
+        return ((long)Source.charAt(Offset) << 32) | ((long)Source.charAt(Offset + 1) << 16) | (long)Source.charAt(Offset + 2);
+    }
+
+    public int Size()
+    {
+        return Keys.size();
+    }
+
+    public int Add(Vehicle NewVehicle)
+    {
+        int Id = Keys.size();
+        String Key = NewVehicle.SearchKey();
+
+        Keys.add(Key);
+
+        for(int Offset = 0; Offset + 3 <= Key.length(); ++Offset)
+        {
+            Postings.computeIfAbsent(PackTrigram(Key, Offset), Ignored -> new FPostingList()).Add(Id);
+        }
+
+        return Id;
+    }
+
+    /** moves the id from the trigrams of its old key to those of the vehicle's current one */
+    public void Update(Vehicle Changed)
+    {
+        int Id = Changed.FleetId;
+        String OldKey = Keys.get(Id);
+        String NewKey = Changed.SearchKey();
+
+        for(int Offset = 0; Offset + 3 <= OldKey.length(); ++Offset)
+        {
+            if(!NewKey.contains(OldKey.substring(Offset, Offset + 3)))
+            {
+                Postings.get(PackTrigram(OldKey, Offset)).Remove(Id);
+            }
+        }
+
+        for(int Offset = 0; Offset + 3 <= NewKey.length(); ++Offset)
+        {
+            Postings.computeIfAbsent(PackTrigram(NewKey, Offset), Ignored -> new FPostingList()).Insert(Id);
+        }
+
+        Keys.set(Id, NewKey);
+    }
+
+    /** upper bound on how many ids Search would verify, the shortest posting list of the input */
+    public int EstimateCandidates(String SearchInput)
+    {
+        final String UppercaseInput = SearchInput.toUpperCase();
+        int Result = Keys.size();
+
+        for(int Offset = 0; Offset + 3 <= UppercaseInput.length(); ++Offset)
+        {
+            FPostingList List = Postings.get(PackTrigram(UppercaseInput, Offset));
+            Result = Math.min(Result, List != null ? List.Size : 0);
+        }
+
+        return Result;
+    }
+
+    /** ids of every vehicle of the given type whose display string contains the input, ascending, null if cancelled */
+    public int[] Search(String SearchInput, byte TypeCode, BooleanSupplier IsCancelled)
+    {
+        final String UppercaseInput = SearchInput.toUpperCase();
+        FleetColumnStore.FSegment OfType = Columns.Segment(TypeCode);
+
+        if(OfType == null)
+        {
+            return new int[0];
+        }
+
+        if(UppercaseInput.length() < 3)
+        {
+            //too short for trigrams, so only the vehicles of the selected type get scanned
+            int NumRows = Math.min(OfType.Size, Keys.size());
+            return Verify(OfType.FleetIds, NumRows, UppercaseInput, TypeCode, IsCancelled);
+        }
+
+        ArrayList<FPostingList> Lists = new ArrayList<FPostingList>();
+
+        for(int Offset = 0; Offset + 3 <= UppercaseInput.length(); ++Offset)
+        {
+            FPostingList List = Postings.get(PackTrigram(UppercaseInput, Offset));
+
+            if(List == null)
+            {
+                return new int[0];
+            }
+
+            if(!Lists.contains(List))
+            {
+                Lists.add(List);
+            }
+        }
+
+        Lists.sort(Comparator.comparingInt(List -> List.Size));
+
+        int[] Candidates = Arrays.copyOf(Lists.get(0).Ids, Lists.get(0).Size);
+        int NumCandidates = Candidates.length;
+
+        for(int ListIndex = 1; ListIndex < Lists.size() && NumCandidates != 0; ++ListIndex)
+        {
+            NumCandidates = Intersect(Candidates, NumCandidates, Lists.get(ListIndex));
+        }
+
+        return Verify(Candidates, NumCandidates, UppercaseInput, TypeCode, IsCancelled);
+    }
+
+    /** same as Search but only looks at the given ids, which must be a superset of the answer */
+    public int[] Refine(int[] Candidates, String SearchInput, byte TypeCode, BooleanSupplier IsCancelled)
+    {
+        return Verify(Candidates, Candidates.length, SearchInput.toUpperCase(), TypeCode, IsCancelled);
+    }
+
+    /** keeps the candidates that are also in the list, in place, returns the new count */
+    private static int Intersect(int[] Candidates, int NumCandidates, FPostingList List)
+    {
+        int NumKept = 0;
+        int ListIndex = 0;
+
+        for(int Index = 0; Index < NumCandidates && ListIndex < List.Size; ++Index)
+        {
+            int Id = Candidates[Index];
+
+            while(ListIndex < List.Size && List.Ids[ListIndex] < Id)
+            {
+                ++ListIndex;
+            }
+
+            if(ListIndex < List.Size && List.Ids[ListIndex] == Id)
+            {
+                Candidates[NumKept++] = Id;
+            }
+        }
+
+        return NumKept;
+    }
+
+    /** trigrams only narrow the set down, the substring itself still has to be checked */
+    private int[] Verify(int[] Candidates, int NumCandidates, String UppercaseInput, byte TypeCode, BooleanSupplier IsCancelled)
+    {
+        int[] Result = new int[NumCandidates];
+        int NumResults = 0;
+
+        for(int Index = 0; Index < NumCandidates; ++Index)
+        {
+            if((Index & 1023) == 0 && IsCancelled.getAsBoolean())
+            {
+                return null;
+            }
+
+            int Id = Candidates[Index];
+
+            if(Columns.TypeCodeAt(Id) == TypeCode && Keys.get(Id).contains(UppercaseInput))
+            {
+                Result[NumResults++] = Id;
+            }
+        }
+
+        return Arrays.copyOf(Result, NumResults);
+    }
+}
+
+/**
+search field query, whitespace separated terms that all have to hold
+model:Volvo color:Red type:Lorry plate:ABC 123 gear:Manual gears>=7 load<5 free:2026/11/01-2026/11/03
+anything else is free text matched against the display string, gear, gears and load imply their vehicle type
+*/
+final class FVehicleQuery
+{
+    public byte Type = -1;
+    public String Model;
+    public String Color;
+    public String Plate;
+    public Car.EGearMode GearMode;
+    public boolean HasGears = false;
+    public int MinGears = Integer.MIN_VALUE;
+    public int MaxGears = Integer.MAX_VALUE;
+    public boolean HasLoad = false;
+    public float MinLoad = Float.NEGATIVE_INFINITY;
+    public float MaxLoad = Float.POSITIVE_INFINITY;
+    public FDate FreeFrom;
+    public FDate FreeTo;
+    public String Text = "";
+
+    /** conflicting types, unknown names or a broken date range, nothing can match */
+    public boolean Unsatisfiable = false;
+
+    /** every structured term in lower case, a query holding all the terms of another can only narrow it down */
+    public final HashSet<String> Terms = new HashSet<String>();
+
+    private static final String[] TypeNames = {"Car", "Bike", "Lorry"};
+
+    /** the type list selection applies unless the query names or implies a type of its own */
+    public static FVehicleQuery Parse(String Input, String TypeOption)
+    {
+        FVehicleQuery Result = new FVehicleQuery();
+        String[] Tokens = Input.trim().split("\\s+");
+        StringBuilder Text = new StringBuilder();
+
+        for(int Index = 0; Index < Tokens.length; ++Index)
+        {
+            String Token = Tokens[Index];
+            String Lower = Token.toLowerCase();
+            int Colon = Token.indexOf(':');
+            String Value = Colon != -1 ? Token.substring(Colon + 1) : "";
+            boolean Structured = true;
+
+            if(Lower.startsWith("model:") && !Value.isEmpty())
+            {
+                Result.Model = Result.RequireValue(Result.Model, Value);
+            }
+            else if(Lower.startsWith("color:") && !Value.isEmpty())
+            {
+                Result.Color = Result.RequireValue(Result.Color, Value);
+            }
+            else if(Lower.startsWith("type:") && !Value.isEmpty())
+            {
+                Result.RequireType(FleetColumnStore.TypeCodeOf(MatchName(TypeNames, Value)));
+            }
+            else if(Lower.startsWith("plate:") && !Value.isEmpty())
+            {
+                //plates hold a space, so "plate:ABC 123" comes in as two tokens
+                if(Index + 1 < Tokens.length && FleetPlateIndex.Pack((Value + " " + Tokens[Index + 1]).toUpperCase()) != FleetPlateIndex.NotPacked)
+                {
+                    Value = Value + " " + Tokens[++Index];
+                    Lower = Lower + " " + Tokens[Index].toLowerCase();
+                }
+
+                Result.Plate = Result.RequireValue(Result.Plate, Value.toUpperCase());
+            }
+            else if(Lower.startsWith("gear:") && !Value.isEmpty())
+            {
+                String Mode = MatchName(Arrays.stream(Car.EGearMode.values()).map(Enum::name).toArray(String[]::new), Value);
+                Result.Unsatisfiable |= Mode.isEmpty() || (Result.GearMode != null && !Result.GearMode.name().equals(Mode));
+                Result.GearMode = Mode.isEmpty() ? null : Car.EGearMode.valueOf(Mode);
+                Result.RequireType(FleetBinaryStore.TypeCar);
+            }
+            else if(Lower.startsWith("free:") && !Value.isEmpty())
+            {
+                int Dash = Value.indexOf('-');
+
+                try
+                {
+                    Result.FreeFrom = FDate.FromInt64(FDate.Parse(Value, 0, Dash));
+                    Result.FreeTo = FDate.FromInt64(FDate.Parse(Value, Dash + 1, Value.length()));
+                    Result.Unsatisfiable |= Result.FreeFrom.MoreOrEqual(Result.FreeTo);
+                }
+                catch(IllegalArgumentException | IndexOutOfBoundsException Exception)
+                {
+                    Result.Unsatisfiable = true;
+                }
+            }
+            else
+            {
+                Structured = Result.ParseComparison(Lower);
+            }
+
+            if(Structured)
+            {
+                Result.Terms.add(Lower);
+            }
+            else if(!Token.isEmpty())
+            {
+                Text.append(Text.length() == 0 ? "" : " ").append(Token);
+            }
+        }
+
+        Result.Text = Text.toString();
+
+        if(Result.Type == -1 && !Result.Unsatisfiable)
+        {
+            Result.Type = FleetColumnStore.TypeCodeOf(TypeOption);
+        }
+
+        return Result;
+    }
+
+    /** the canonical spelling of Value among Names, empty if there is none */
+    private static String MatchName(String[] Names, String Value)
+    {
+        for(String Name : Names)
+        {
+            if(Name.equalsIgnoreCase(Value))
+            {
+                return Name;
+            }
+        }
+
+        return "";
+    }
+
+    /** a column asked for two different values can match nothing, every term has to hold */
+    private String RequireValue(String Current, String Value)
+    {
+        if(Current != null && !Current.equalsIgnoreCase(Value))
+        {
+            Unsatisfiable = true;
+        }
+
+        return Value;
+    }
+
+    private void RequireType(byte TypeCode)
+    {
+        if(TypeCode < 0 || (Type != -1 && Type != TypeCode))
+        {
+            Unsatisfiable = true;
+        }
+
+        Type = TypeCode;
+    }
+
+    /** gears or load followed by one of < <= = >= > and a number, false if the term is anything else */
+    private boolean ParseComparison(String Term)
+    {
+        String Name = Term.startsWith("gears") ? "gears" : Term.startsWith("load") ? "load" : null;
+
+        if(Name == null)
+        {
+            return false;
+        }
+
+        String Rest = Term.substring(Name.length());
+        String Operator = null;
+
+        for(String Candidate : new String[] {">=", "<=", ">", "<", "="})
+        {
+            if(Operator == null && Rest.startsWith(Candidate))
+            {
+                Operator = Candidate;
+            }
+        }
+
+        if(Operator == null)
+        {
+            return false;
+        }
+
+        double Number;
+
+        try
+        {
+            Number = Double.parseDouble(Rest.substring(Operator.length()));
+        }
+        catch(NumberFormatException Exception)
+        {
+            return false;
+        }
+
+        if(Name.equals("gears"))
+        {
+            //whole gear counts only, so bounds on fractions round inwards
+            switch(Operator)
+            {
+                case "<" -> MaxGears = Math.min(MaxGears, (int)Math.ceil(Number) - 1);
+                case "<=" -> MaxGears = Math.min(MaxGears, (int)Math.floor(Number));
+                case ">" -> MinGears = Math.max(MinGears, (int)Math.floor(Number) + 1);
+                case ">=" -> MinGears = Math.max(MinGears, (int)Math.ceil(Number));
+                default ->
+                {
+                    MinGears = Math.max(MinGears, (int)Math.ceil(Number));
+                    MaxGears = Math.min(MaxGears, (int)Math.floor(Number));
+                }
+            }
+
+            HasGears = true;
+            RequireType(FleetBinaryStore.TypeBike);
+        }
+        else
+        {
+            float Load = (float)Number;
+
+            switch(Operator)
+            {
+                case "<" -> MaxLoad = Math.min(MaxLoad, Math.nextDown(Load));
+                case "<=" -> MaxLoad = Math.min(MaxLoad, Load);
+                case ">" -> MinLoad = Math.max(MinLoad, Math.nextUp(Load));
+                case ">=" -> MinLoad = Math.max(MinLoad, Load);
+                default ->
+                {
+                    MinLoad = Math.max(MinLoad, Load);
+                    MaxLoad = Math.min(MaxLoad, Load);
+                }
+            }
+
+            HasLoad = true;
+            RequireType(FleetBinaryStore.TypeLorry);
+        }
+
+        return true;
+    }
+
+    /** true when every match of Next is known to be among the matches of Previous */
+    public static boolean CanRefine(FVehicleQuery Previous, FVehicleQuery Next)
+    {
+        //availability changes with every booking, so a free: query always starts over
+        return Next.FreeFrom == null && Previous.Type == Next.Type && Next.Terms.containsAll(Previous.Terms)
+        && Next.Text.toUpperCase().contains(Previous.Text.toUpperCase());
+    }
+}
+
+/** runs a parsed query, the most selective indexed term picks the candidates and the rest are only checked on those */
+final class VehicleQueryPlanner
+{
+    private final FleetColumnStore Columns;
+    private final FleetPlateIndex Plates;
+    private final VehicleSearchIndex SearchIndex;
+    private final FleetOccupancyIndex Occupancy;
+
+    VehicleQueryPlanner(FleetColumnStore InColumns, FleetPlateIndex InPlates, VehicleSearchIndex InSearchIndex, FleetOccupancyIndex InOccupancy)
+    {
+        Columns = InColumns;
+        Plates = InPlates;
+        SearchIndex = InSearchIndex;
+        Occupancy = InOccupancy;
+    }
+
+    enum ESource
+    {
+        Segment,
+        Within,
+        Plate,
+        ModelColor,
+        Free,
+        Text
+    }
+
+    /** matching fleet ids ascending, only looking at Within when it is given, null if cancelled */
+    public int[] Run(FVehicleQuery Query, int[] Within, BooleanSupplier IsCancelled)
+    {
+        FleetColumnStore.FSegment Segment = Columns.Segment(Query.Type);
+
+        if(Query.Unsatisfiable || Segment == null)
+        {
+            return new int[0];
+        }
+
+        int ModelId = Query.Model != null ? Columns.Models.IdOf(Query.Model) : -1;
+        int ColorId = Query.Color != null ? Columns.Colors.IdOf(Query.Color) : -1;
+
+        if((Query.Model != null && ModelId < 0) || (Query.Color != null && ColorId < 0))
+        {
+            return new int[0];
+        }
+
+        //every source gives the number of ids it would hand over, the smallest one wins
+        ESource Source = ESource.Segment;
+        int Estimate = Segment.Size;
+
+        if(Within != null && Within.length < Estimate)
+        {
+            Source = ESource.Within;
+            Estimate = Within.length;
+        }
+
+        int PlateId = -1;
+        String ExactPlate = Query.Plate != null ? Query.Plate : Query.Text.toUpperCase();
+
+        if(FleetPlateIndex.Pack(ExactPlate) != FleetPlateIndex.NotPacked)
+        {
+            PlateId = Plates.Find(ExactPlate);
+
+            if(PlateId != -1 || Query.Plate != null)
+            {
+                Source = ESource.Plate;
+                Estimate = PlateId != -1 ? 1 : 0;
+            }
+        }
+
+        if(ModelId >= 0 || ColorId >= 0)
+        {
+            int Count = Math.min(ModelId >= 0 ? Segment.ModelCount(ModelId) : Segment.Size, ColorId >= 0 ? Segment.ColorCount(ColorId) : Segment.Size);
+
+            if(Count < Estimate)
+            {
+                Source = ESource.ModelColor;
+                Estimate = Count;
+            }
+        }
+
+        //day bitsets are combined a word at a time, cheap enough to always work out the exact count
+        BitSet Free = Query.FreeFrom != null ? Occupancy.FindFree(Query.FreeFrom, Query.FreeTo, Query.Type) : null;
+
+        if(Free != null && Free.cardinality() < Estimate)
+        {
+            Source = ESource.Free;
+            Estimate = Free.cardinality();
+        }
+
+        if(!Query.Text.isEmpty() && SearchIndex.EstimateCandidates(Query.Text) < Estimate)
+        {
+            Source = ESource.Text;
+        }
+
+        int[] Candidates = switch(Source)
+        {
+            case Segment -> Segment.SelectAll();
+            case Within -> Within;
+            case Plate -> PlateId != -1 ? new int[] {PlateId} : new int[0];
+            case ModelColor -> Segment.SelectByModelColor(ModelId, ColorId);
+            case Free -> Free.stream().toArray();
+            case Text -> SearchIndex.Search(Query.Text, Query.Type, IsCancelled);
+        };
+
+        if(Candidates == null)
+        {
+            return null;
+        }
+
+        Candidates = Filter(Query, Segment, ModelId, ColorId, Free, Candidates, IsCancelled);
+
+        if(Candidates != null && !Query.Text.isEmpty() && Source != ESource.Text)
+        {
+            //substring checks are the most expensive, so they only see what every other term let through
+            Candidates = SearchIndex.Refine(Candidates, Query.Text, Query.Type, IsCancelled);
+        }
+
+        return Candidates;
+    }
+
+    /** every column and bitset term, in place on a copy of the candidates */
+    private int[] Filter(FVehicleQuery Query, FleetColumnStore.FSegment Segment, int ModelId, int ColorId, BitSet Free, int[] Candidates, BooleanSupplier IsCancelled)
+    {
+        int[] Result = new int[Candidates.length];
+        int NumResults = 0;
+        String Plate = Query.Plate;
+
+        for(int Index = 0; Index < Candidates.length; ++Index)
+        {
+            if((Index & 1023) == 0 && IsCancelled.getAsBoolean())
+            {
+                return null;
+            }
+
+            int Id = Candidates[Index];
+
+            if(Columns.TypeCodeAt(Id) != Query.Type)
+            {
+                continue;
+            }
+
+            int Row = Columns.RowAt(Id);
+
+            boolean Matches = (ModelId < 0 || Segment.ModelIds[Row] == ModelId)
+            && (ColorId < 0 || Segment.ColorIds[Row] == ColorId)
+            && (Query.GearMode == null || ((FleetColumnStore.FCarSegment)Segment).GearModes[Row] == Query.GearMode.ordinal())
+            && (!Query.HasGears || (((FleetColumnStore.FBikeSegment)Segment).NumGears[Row] >= Query.MinGears && ((FleetColumnStore.FBikeSegment)Segment).NumGears[Row] <= Query.MaxGears))
+            && (!Query.HasLoad || (((FleetColumnStore.FLorrySegment)Segment).MaxLoads[Row] >= Query.MinLoad && ((FleetColumnStore.FLorrySegment)Segment).MaxLoads[Row] <= Query.MaxLoad))
+            && (Plate == null || Segment.RegNumbers[Row].toUpperCase().contains(Plate))
+            && (Free == null || Free.get(Id));
+
+            if(Matches)
+            {
+                Result[NumResults++] = Id;
+            }
+        }
+
+        return Arrays.copyOf(Result, NumResults);
+    }
+}
+
+/**
+binary fleet file, big endian:
+header     magic, version, last journal segment folded in (version 2 on), string count, strings (u16 length + utf8), vehicle count, booking count
+vehicles   fixed 40 byte records: type, reg length, model id, color id, reg[18], special, booking count, first booking
+bookings   16 byte records: packed from, packed to
+*/
+final class FleetBinaryStore
+{
+    static final int Magic = 0x564D4631;
+    /** version 2 adds the journal segment stamp after the version */
+    static final int Version = 2;
+    static final int VehicleRecordSize = 40;
+    static final int BookingRecordSize = 16;
+    static final int MaxRegNumberBytes = 18;
+
+    static final byte TypeCar = 0;
+    static final byte TypeBike = 1;
+    static final byte TypeLorry = 2;
+
+    public static boolean IsBinaryFile(File VehicleFile)
+    {
+        return VehicleFile.getName().endsWith(".bin");
+    }
+
+    public static ArrayList<Vehicle> Read(File VehicleFile) throws IOException
+    {
+        try(FileChannel Channel = FileChannel.open(VehicleFile.toPath(), StandardOpenOption.READ))
+        {
+            if(Channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException(VehicleFile + " is too large to map");
+            }
+
+            MappedByteBuffer Buffer = Channel.map(FileChannel.MapMode.READ_ONLY, 0, Channel.size());
+
+            if(Buffer.getInt() != Magic)
+            {
+                throw new IOException(VehicleFile + " is not a fleet file");
+            }
+
+            int FileVersion = Buffer.getInt();
+
+            if(FileVersion != 1 && FileVersion != Version)
+            {
+                throw new IOException(VehicleFile + " is a version " + FileVersion + " fleet file, only 1 and " + Version + " are known");
+            }
+
+            if(FileVersion == Version)
+            {
+                Buffer.getLong();
+            }
+
+            String[] Strings = new String[Buffer.getInt()];
+
+            for(int Index = 0; Index < Strings.length; ++Index)
+            {
+                byte[] Bytes = new byte[Buffer.getShort() & 0xFFFF];
+                Buffer.get(Bytes);
+                Strings[Index] = new String(Bytes, StandardCharsets.UTF_8);
+            }
+
+            int NumVehicles = Buffer.getInt();
+            long NumBookings = Buffer.getLong();
+            int VehiclesStart = Buffer.position();
+            long BookingsStart = VehiclesStart + (long)NumVehicles * VehicleRecordSize;
+
+            if(BookingsStart + NumBookings * BookingRecordSize != Channel.size())
+            {
+                throw new IOException(VehicleFile + " is truncated");
+            }
+
+            ArrayList<Vehicle> Result = new ArrayList<Vehicle>(NumVehicles);
+            byte[] RegBytes = new byte[MaxRegNumberBytes];
+
+            for(int Index = 0; Index < NumVehicles; ++Index)
+            {
+                int Record = VehiclesStart + Index * VehicleRecordSize;
+
+                byte Type = Buffer.get(Record);
+                int RegLength = Buffer.get(Record + 1);
+
+                if(RegLength < 0 || RegLength > MaxRegNumberBytes)
+                {
+                    throw new IOException("malformed fleet file " + VehicleFile + ", registration number of " + RegLength + " bytes");
+                }
+
+                String Model = Strings[Buffer.getShort(Record + 2) & 0xFFFF];
+                String Color = Strings[Buffer.getShort(Record + 4) & 0xFFFF];
+                Buffer.get(Record + 6, RegBytes, 0, RegLength);
+                int Special = Buffer.getInt(Record + 24);
+                int BookingCount = Buffer.getInt(Record + 28);
+                long FirstBooking = Buffer.getLong(Record + 32);
+
+                Vehicle Base = new Vehicle(Model, Color, new String(RegBytes, 0, RegLength, StandardCharsets.UTF_8));
+
+                Vehicle Parsed = switch(Type)
+                {
+                    case TypeCar -> new Car(Base, GearModeOf(Special, VehicleFile));
+                    case TypeBike -> new Bike(Base, Special);
+                    case TypeLorry -> new Lorry(Base, Float.intBitsToFloat(Special));
+                    default -> throw new IOException("unknown vehicle type " + Type + " in " + VehicleFile);
+                };
+
+                for(int Booking = 0; Booking < BookingCount; ++Booking)
+                {
+                    int BookingRecord = (int)(BookingsStart + (FirstBooking + Booking) * BookingRecordSize);
+                    long From = Buffer.getLong(BookingRecord);
+                    long To = Buffer.getLong(BookingRecord + 8);
+
+                    if(From >= To || !Parsed.Bookings.Add(From, To))
+                    {
+                        throw new IOException("invalid booking for " + Parsed + " in " + VehicleFile);
+                    }
+                }
+
+                Result.add(Parsed);
+            }
+
+            return Result;
+        }
+        catch(IndexOutOfBoundsException | BufferUnderflowException Exception)
+        {
+            throw new IOException("malformed fleet file " + VehicleFile, Exception);
+        }
+    }
+
+    private static Car.EGearMode GearModeOf(int Special, File VehicleFile) throws IOException
+    {
+        Car.EGearMode[] Modes = Car.EGearMode.values();
+
+        if(Special < 0 || Special >= Modes.length)
+        {
+            throw new IOException("malformed fleet file " + VehicleFile + ", unknown gear mode " + Special);
+        }
+
+        return Modes[Special];
+    }
+
+    /** the last journal segment already folded into the file, 0 when there is none or the file predates the stamp */
+    public static long ReadJournalSegment(File VehicleFile) throws IOException
+    {
+        try(DataInputStream In = new DataInputStream(new BufferedInputStream(new FileInputStream(VehicleFile), 16)))
+        {
+            return In.readInt() == Magic && In.readInt() == Version ? In.readLong() : 0;
+        }
+    }
+
+    public static void Write(File VehicleFile, java.util.List<Vehicle> Vehicles) throws IOException
+    {
+        Write(VehicleFile, Vehicles, 0);
+    }
+
+    public static void Write(File VehicleFile, java.util.List<Vehicle> Vehicles, long JournalSegment) throws IOException
+    {
+        HashMap<String, Integer> StringIds = new HashMap<String, Integer>();
+        ArrayList<String> Strings = new ArrayList<String>();
+        long NumBookings = 0;
+
+        for(Vehicle Each : Vehicles)
+        {
+            for(String Value : new String[]{Each.Model, Each.Color})
+            {
+                if(!StringIds.containsKey(Value))
+                {
+                    StringIds.put(Value, Strings.size());
+                    Strings.add(Value);
+                }
+            }
+
+            NumBookings += Each.Bookings.Size();
+        }
+
+        try(FileChannel Channel = FileChannel.open(VehicleFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            DataOutputStream Out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(Channel), 1 << 16)))
+        {
+            Out.writeInt(Magic);
+            Out.writeInt(Version);
+            Out.writeLong(JournalSegment);
+            Out.writeInt(Strings.size());
+
+            for(String Value : Strings)
+            {
+                byte[] Bytes = Value.getBytes(StandardCharsets.UTF_8);
+                Out.writeShort(Bytes.length);
+                Out.write(Bytes);
+            }
+
+            Out.writeInt(Vehicles.size());
+            Out.writeLong(NumBookings);
+
+            long FirstBooking = 0;
+
+            for(Vehicle Each : Vehicles)
+            {
+                byte[] RegBytes = Each.RegNumber.getBytes(StandardCharsets.UTF_8);
+
+                if(RegBytes.length > MaxRegNumberBytes)
+                {
+                    throw new IOException("registration number " + Each.RegNumber + " is too long for the binary format");
+                }
+
+                byte Type = FleetColumnStore.TypeCodeOf(Each);
+                int Special;
+
+                if(Each instanceof Car AsCar)
+                {
+                    Special = AsCar.GearMode.ordinal();
+                }
+                else if(Each instanceof Bike AsBike)
+                {
+                    Special = AsBike.NumGears;
+                }
+                else if(Each instanceof Lorry AsLorry)
+                {
+                    Special = Float.floatToIntBits(AsLorry.MaxLoad);
+                }
+                else
+                {
+                    throw new IOException("cannot store " + Each.getClass().getName());
+                }
+
+                Out.writeByte(Type);
+                Out.writeByte(RegBytes.length);
+                Out.writeShort(StringIds.get(Each.Model));
+                Out.writeShort(StringIds.get(Each.Color));
+                Out.write(Arrays.copyOf(RegBytes, MaxRegNumberBytes));
+                Out.writeInt(Special);
+                Out.writeInt(Each.Bookings.Size());
+                Out.writeLong(FirstBooking);
+
+                FirstBooking += Each.Bookings.Size();
+            }
+
+            for(Vehicle Each : Vehicles)
+            {
+                for(long Date : Each.Bookings.ToPackedArray())
+                {
+                    Out.writeLong(Date);
+                }
+            }
+
+            Out.flush();
+            Channel.force(true);
+        }
+    }
+}
+
+/** parses Vehicles.txt straight from a mapped buffer, in record aligned chunks on the fork-join pool */
+final class FleetTextLoader
+{
+    static final int ChunkBytes = 1 << 20;
+
+    /** optional first line holding the last journal segment folded into the file */
+    static final String JournalHeader = "#journal ";
+
+    static final class FLoadStats
+    {
+        public int NumVehicles;
+        public long NumBookings;
+        public long Nanos;
+
+        public double RecordsPerSecond()
+        {
+            return Nanos == 0 ? 0 : NumVehicles * 1e9 / Nanos;
+        }
+
+        @Override public String toString()
+        {
+            return NumVehicles + " vehicles, " + NumBookings + " bookings in " + (Nanos / 1000000) + " ms ("
+            + (long)RecordsPerSecond() + " records/s)";
+        }
+    }
+
+    private final ByteBuffer Buffer;
+
+    private FleetTextLoader(ByteBuffer Buffer)
+    {
+        this.Buffer = Buffer;
+    }
+
+    public static ArrayList<Vehicle> Load(File VehicleFile, FLoadStats Stats) throws IOException
+    {
+        long StartTime = System.nanoTime();
+        ByteBuffer Buffer;
+
+        try(FileChannel Channel = FileChannel.open(VehicleFile.toPath(), StandardOpenOption.READ))
+        {
+            if(Channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException(VehicleFile + " is too large to map");
+            }
+
+            Buffer = Channel.map(FileChannel.MapMode.READ_ONLY, 0, Channel.size());
+        }
+
+        ArrayList<Vehicle> Result;
+        FleetTextLoader Loader = new FleetTextLoader(Buffer);
+        int First = Loader.Matches(0, Math.min(JournalHeader.length(), Buffer.limit()), JournalHeader) ? Math.min(Loader.FindLineEnd(0, Buffer.limit()) + 1, Buffer.limit()) : 0;
+
+        try
+        {
+            Result = ForkJoinPool.commonPool().invoke(Loader.new FChunkTask(First, Buffer.limit()));
+        }
+        catch(IllegalArgumentException | IndexOutOfBoundsException Exception)
+        {
+            throw new IOException("malformed fleet file " + VehicleFile + ": " + Exception.getMessage(), Exception);
+        }
+
+        if(Stats != null)
+        {
+            Stats.Nanos = System.nanoTime() - StartTime;
+            Stats.NumVehicles = Result.size();
+            Stats.NumBookings = 0;
+
+            for(Vehicle Each : Result)
+            {
+                Stats.NumBookings += Each.Bookings.Size();
+            }
+        }
+
+        return Result;
+    }
+
+    public static long ReadJournalSegment(File VehicleFile) throws IOException
+    {
+        try(BufferedReader In = Files.newBufferedReader(VehicleFile.toPath(), StandardCharsets.UTF_8))
+        {
+            String Line = In.readLine();
+
+            try
+            {
+                return Line != null && Line.startsWith(JournalHeader) ? Long.parseLong(Line.substring(JournalHeader.length()).trim()) : 0;
+            }
+            catch(NumberFormatException Exception)
+            {
+                throw new IOException("malformed fleet file " + VehicleFile + ": " + Line);
+            }
+        }
+    }
+
+    /** first record start at or after Position, records end with a line holding only } */
+    private int AlignToRecord(int Position, int End)
+    {
+        for(int Index = Position; Index < End; ++Index)
+        {
+            if(Buffer.get(Index) == '}' && (Index == 0 || Buffer.get(Index - 1) == '\n'))
+            {
+                int LineEnd = FindLineEnd(Index, End);
+                return LineEnd < End ? LineEnd + 1 : End;
+            }
+        }
+
+        return End;
+    }
+
+    private int FindLineEnd(int Position, int End)
+    {
+        while(Position < End && Buffer.get(Position) != '\n')
+        {
+            ++Position;
+        }
+
+        return Position;
+    }
+
+    private int IndexOf(byte Value, int Position, int End)
+    {
+        for(int Index = Position; Index < End; ++Index)
+        {
+            if(Buffer.get(Index) == Value)
+            {
+                return Index;
+            }
+        }
+
+        throw new IllegalArgumentException("expected '" + (char)Value + "' at byte " + Position);
+    }
+
+    private boolean Matches(int Position, int End, String Expected)
+    {
+        if(End - Position != Expected.length())
+        {
+            return false;
+        }
+
+        for(int Index = 0; Index < Expected.length(); ++Index)
+        {
+            if(Buffer.get(Position + Index) != Expected.charAt(Index))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String Decode(int Position, int End)
+    {
+        byte[] Bytes = new byte[End - Position];
+        Buffer.get(Position, Bytes);
+        return new String(Bytes, StandardCharsets.UTF_8);
+    }
+
+    final class FChunkTask extends RecursiveTask<ArrayList<Vehicle>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int Start;
+        private final int End;
+        private int Cursor;
+
+        FChunkTask(int Start, int End)
+        {
+            this.Start = Start;
+            this.End = End;
+        }
+
+        @Override protected ArrayList<Vehicle> compute()
+        {
+            if(End - Start > ChunkBytes)
+            {
+                int Middle = AlignToRecord(Start + (End - Start) / 2, End);
+
+                if(Middle < End)
+                {
+                    FChunkTask Left = new FChunkTask(Start, Middle);
+                    Left.fork();
+
+                    ArrayList<Vehicle> Right = new FChunkTask(Middle, End).compute();
+                    ArrayList<Vehicle> Result = Left.join();
+                    Result.addAll(Right);
+                    return Result;
+                }
+            }
+
+            return ParseRange();
+        }
+
+        private int LineEnd()
+        {
+            int LineEnd = FindLineEnd(Cursor, End);
+            return LineEnd > Cursor && Buffer.get(LineEnd - 1) == '\r' ? LineEnd - 1 : LineEnd;
+        }
+
+        private void NextLine()
+        {
+            Cursor = Math.min(FindLineEnd(Cursor, End) + 1, End);
+        }
+
+        private ArrayList<Vehicle> ParseRange()
+        {
+            ArrayList<Vehicle> Result = new ArrayList<Vehicle>();
+            Cursor = Start;
+
+            while(Cursor < End)
+            {
+                int LineEnd = LineEnd();
+
+                if(LineEnd == Cursor)
+                {
+                    NextLine();
+                    continue;
+                }
+
+                Vehicle Parsed = ParseHeader(LineEnd);
+                NextLine();
+
+                if(!Matches(Cursor, LineEnd(), "{"))
+                {
+                    throw new IllegalArgumentException("expected { at byte " + Cursor);
+                }
+
+                NextLine();
+
+                while(!Matches(Cursor, LineEnd(), "}"))
+                {
+                    if(Cursor >= End)
+                    {
+                        throw new IllegalArgumentException("unterminated bookings for " + Parsed);
+                    }
+
+                    long From = ParseDate();
+                    Skip(" - ");
+                    long To = ParseDate();
+
+                    if(Cursor != LineEnd())
+                    {
+                        throw new IllegalArgumentException("unexpected text after the booking at byte " + Cursor);
+                    }
+
+                    if(From >= To)
+                    {
+                        throw new IllegalArgumentException("from is more than to at byte " + Cursor);
+                    }
+
+                    if(!Parsed.Bookings.Add(From, To))
+                    {
+                        throw new IllegalArgumentException("overlapping booking at byte " + Cursor);
+                    }
+
+                    NextLine();
+                }
+
+                NextLine();
+                Result.add(Parsed);
+            }
+
+            return Result;
+        }
+
+        /** Model (Color) [RegNumber] Special[ gears| tonnes] */
+        private Vehicle ParseHeader(int LineEnd)
+        {
+            int ModelEnd = IndexOf((byte)' ', Cursor, LineEnd);
+            int ColorEnd = IndexOf((byte)')', ModelEnd + 2, LineEnd);
+            int RegStart = IndexOf((byte)'[', ColorEnd, LineEnd) + 1;
+            int RegEnd = IndexOf((byte)']', RegStart, LineEnd);
+            int SpecialStart = RegEnd + 2;
+            int SpecialEnd = SpecialStart;
+
+            while(SpecialEnd < LineEnd && Buffer.get(SpecialEnd) != ' ')
+            {
+                ++SpecialEnd;
+            }
+
+            Vehicle Base = new Vehicle(Decode(Cursor, ModelEnd), Decode(ModelEnd + 2, ColorEnd), Decode(RegStart, RegEnd));
+
+            if(Matches(SpecialEnd + 1, LineEnd, "gears"))
+            {
+                Cursor = SpecialStart;
+                return new Bike(Base, ParseUnsigned());
+            }
+            else if(Matches(SpecialEnd + 1, LineEnd, "tonnes"))
+            {
+                return new Lorry(Base, Float.parseFloat(Decode(SpecialStart, SpecialEnd)));
+            }
+
+            for(Car.EGearMode Mode : Car.EGearMode.values())
+            {
+                if(Matches(SpecialStart, SpecialEnd, Mode.name()))
+                {
+                    return new Car(Base, Mode);
+                }
+            }
+
+            throw new IllegalArgumentException("unknown vehicle at byte " + Cursor);
+        }
+
+        private int ParseUnsigned()
+        {
+            int Value = 0;
+            int Digits = 0;
+
+            for(; Cursor < End && Buffer.get(Cursor) >= '0' && Buffer.get(Cursor) <= '9'; ++Cursor, ++Digits)
+            {
+                Value = Value * 10 + (Buffer.get(Cursor) - '0');
+            }
+
+            if(Digits == 0 || Digits > 9)
+            {
+                throw new IllegalArgumentException("expected a number at byte " + Cursor);
+            }
+
+            return Value;
+        }
+
+        /** moves the cursor past Expected, which has to come next */
+        private void Skip(String Expected)
+        {
+            for(int Index = 0; Index < Expected.length(); ++Index, ++Cursor)
+            {
+                if(Cursor >= End || Buffer.get(Cursor) != Expected.charAt(Index))
+                {
+                    throw new IllegalArgumentException("expected '" + Expected + "' at byte " + Cursor);
+                }
+            }
+        }
+
+        /** Year/Month/Day as a packed FDate, leaves the cursor just past the day */
+        private long ParseDate()
+        {
+            int Year = ParseUnsigned();
+            Skip("/");
+            int Month = ParseUnsigned();
+            Skip("/");
+            int Day = ParseUnsigned();
+
+            if(!FDate.IsValid(Year, Month, Day))
+            {
+                throw new IllegalArgumentException("invalid date at byte " + Cursor);
+            }
+
+            return FDate.Pack(Year, Month, Day);
+        }
+    }
+}
+
+/**
+write-ahead log of booking changes made since the last snapshot of the fleet file
+records: op, plate length, plate (utf8), packed from, packed to, and for a move the new packed from and to
+the plate length is one byte below 128, above that two bytes big endian with the top bit of the first set, so plates up to 32767 bytes fit
+a rotated segment stays on disk until a snapshot that includes it has been written
+*/
+final class BookingJournal
+{
+    /** never written, completes once every record queued before it is on disk */
+    static final byte OpFlush = 0;
+    static final byte OpAdd = 1;
+    static final byte OpCancel = 2;
+    static final byte OpMove = 3;
+
+    static final int MaxPlateBytes = 0x7FFF;
+
+    static final class FPendingRecord
+    {
+        final byte Op;
+        final byte[] Plate;
+        final long From;
+        final long To;
+        final long NewFrom;
+        final long NewTo;
+        final CompletableFuture<Void> Written = new CompletableFuture<Void>();
+
+        FPendingRecord(byte Op, String RegNumber, long From, long To, long NewFrom, long NewTo)
+        {
+            this.Op = Op;
+            this.Plate = RegNumber.getBytes(StandardCharsets.UTF_8);
+
+            if(Plate.length > MaxPlateBytes)
+            {
+                throw new IllegalArgumentException("registration number " + RegNumber + " is too long to journal");
+            }
+
+            this.From = From;
+            this.To = To;
+            this.NewFrom = NewFrom;
+            this.NewTo = NewTo;
+        }
+
+        int NumBytes()
+        {
+            return Op == OpFlush ? 0 : 1 + (Plate.length < 0x80 ? 1 : 2) + Plate.length + (Op == OpMove ? 32 : 16);
+        }
+    }
+
+    private final Path JournalPath;
+    private final Object ChannelLock = new Object();
+    private final LinkedBlockingQueue<FPendingRecord> Queue = new LinkedBlockingQueue<FPendingRecord>();
+    private FileChannel Channel;
+    private volatile long Size;
+
+    /** segments up to this one are already in the fleet file, numbers keep counting up from it even once they are deleted */
+    private final long CoveredSegment;
+    private long LastSegment;
+
+    BookingJournal(File VehicleFile, long CoveredSegment) throws IOException
+    {
+        JournalPath = PathOf(VehicleFile);
+        this.CoveredSegment = CoveredSegment;
+
+        ArrayList<Path> Segments = RotatedSegments(JournalPath);
+        LastSegment = Math.max(CoveredSegment, Segments.isEmpty() ? 0 : SegmentNumber(Segments.get(Segments.size() - 1)));
+
+        TruncateTornTail();
+
+        Channel = FileChannel.open(JournalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Size = Channel.size();
+
+        Thread Writer = new Thread(this::WriteLoop, "BookingJournal");
+        Writer.setDaemon(true);
+        Writer.start();
+    }
+
+    public long Size()
+    {
+        return Size;
+    }
+
+    /** appending after a torn record would misalign every later one, so the live journal is cut back to its last complete record first */
+    private void TruncateTornTail() throws IOException
+    {
+        if(!Files.exists(JournalPath))
+        {
+            return;
+        }
+
+        long Complete = ReadRecords(JournalPath, (Op, Plate, From, To, NewFrom, NewTo) -> {});
+
+        if(Complete < Files.size(JournalPath))
+        {
+            try(FileChannel Torn = FileChannel.open(JournalPath, StandardOpenOption.WRITE))
+            {
+                Torn.truncate(Complete);
+                Torn.force(true);
+            }
+        }
+    }
+
+    /** completes once the record is on disk, records queued together share one fsync */
+    public CompletableFuture<Void> AppendAdd(String RegNumber, FBooking Booking)
+    {
+        return Append(new FPendingRecord(OpAdd, RegNumber, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64(), 0, 0));
+    }
+
+    public CompletableFuture<Void> AppendCancel(String RegNumber, FBooking Booking)
+    {
+        return Append(new FPendingRecord(OpCancel, RegNumber, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64(), 0, 0));
+    }
+
+    /** one record for both halves, so a crash can never leave the old booking gone and the new one missing */
+    public CompletableFuture<Void> AppendMove(String RegNumber, FBooking Booking, FBooking NewBooking)
+    {
+        return Append(new FPendingRecord(OpMove, RegNumber, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64(), NewBooking.HiredFrom.ToInt64(), NewBooking.HiredTo.ToInt64()));
+    }
+
+    private CompletableFuture<Void> Append(FPendingRecord Record)
+    {
+        Queue.add(Record);
+        return Record.Written;
+    }
+
+    private void WriteLoop()
+    {
+        ArrayList<FPendingRecord> Batch = new ArrayList<FPendingRecord>();
+
+        while(true)
+        {
+            try
+            {
+                Batch.add(Queue.take());
+            }
+            catch(InterruptedException Exception)
+            {
+                return;
+            }
+
+            Queue.drainTo(Batch);
+
+            int NumBytes = 0;
+
+            for(FPendingRecord Record : Batch)
+            {
+                NumBytes += Record.NumBytes();
+            }
+
+            ByteBuffer Buffer = ByteBuffer.allocate(NumBytes);
+
+            for(FPendingRecord Record : Batch)
+            {
+                if(Record.Op == OpFlush)
+                {
+                    continue;
+                }
+
+                Buffer.put(Record.Op);
+
+                if(Record.Plate.length < 0x80)
+                {
+                    Buffer.put((byte)Record.Plate.length);
+                }
+                else
+                {
+                    Buffer.putShort((short)(0x8000 | Record.Plate.length));
+                }
+
+                Buffer.put(Record.Plate);
+                Buffer.putLong(Record.From);
+                Buffer.putLong(Record.To);
+
+                if(Record.Op == OpMove)
+                {
+                    Buffer.putLong(Record.NewFrom);
+                    Buffer.putLong(Record.NewTo);
+                }
+            }
+
+            Buffer.flip();
+
+            try
+            {
+                synchronized(ChannelLock)
+                {
+                    while(Buffer.hasRemaining())
+                    {
+                        Channel.write(Buffer);
+                    }
+
+                    Channel.force(false);
+                    Size = Channel.size();
+                }
+
+                FleetMetrics.Global.BytesWritten.add(NumBytes);
+                FleetMetrics.Global.JournalBatches.increment();
+
+                for(FPendingRecord Record : Batch)
+                {
+                    Record.Written.complete(null);
+                }
+            }
+            catch(IOException Exception)
+            {
+                System.err.println("writing " + JournalPath + " failed: " + Exception);
+
+                for(FPendingRecord Record : Batch)
+                {
+                    Record.Written.completeExceptionally(Exception);
+                }
+            }
+
+            Batch.clear();
+        }
+    }
+
+    static Path PathOf(File VehicleFile)
+    {
+        return Paths.get(VehicleFile.getPath() + ".journal");
+    }
+
+    private static long SegmentNumber(Path Segment)
+    {
+        String Name = Segment.getFileName().toString();
+        return Long.parseLong(Name.substring(Name.lastIndexOf('.') + 1));
+    }
+
+    private static ArrayList<Path> RotatedSegments(Path JournalPath) throws IOException
+    {
+        ArrayList<Path> Result = new ArrayList<Path>();
+        String Prefix = JournalPath.getFileName() + ".";
+        Path Directory = JournalPath.toAbsolutePath().getParent();
+
+        try(DirectoryStream<Path> Entries = Files.newDirectoryStream(Directory, Prefix + "*"))
+        {
+            for(Path Entry : Entries)
+            {
+                try
+                {
+                    Long.parseLong(Entry.getFileName().toString().substring(Prefix.length()));
+                    Result.add(Entry);
+                }
+                catch(NumberFormatException ignored){}
+            }
+        }
+
+        Result.sort(Comparator.comparingLong(BookingJournal::SegmentNumber));
+        return Result;
+    }
+
+    /**
+    waits for every record queued so far to be written, then moves them into a new segment and starts an empty journal
+    the caller has to keep new records from being queued meanwhile for the cut to be exact
+    */
+    public long Rotate() throws IOException
+    {
+        try
+        {
+            Append(new FPendingRecord(OpFlush, "", 0, 0, 0, 0)).join();
+        }
+        catch(CompletionException Exception)
+        {
+            throw new IOException("writing " + JournalPath + " failed", Exception.getCause());
+        }
+
+        synchronized(ChannelLock)
+        {
+            long Number = ++LastSegment;
+            Path Segment = Paths.get(JournalPath + "." + Number);
+
+            Channel.force(false);
+            Channel.close();
+            Files.move(JournalPath, Segment, StandardCopyOption.ATOMIC_MOVE);
+
+            Channel = FileChannel.open(JournalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            Size = 0;
+            return Number;
+        }
+    }
+
+    /** called once a snapshot containing every record up to and including this segment is safely on disk */
+    public void DeleteSegmentsUpTo(long Number) throws IOException
+    {
+        for(Path Each : RotatedSegments(JournalPath))
+        {
+            if(SegmentNumber(Each) <= Number)
+            {
+                Files.delete(Each);
+            }
+        }
+    }
+
+    /**
+    re-applies the journaled changes the fleet file does not hold yet, in order, through the service before it has a journal to write to
+    the file is stamped with the last segment it covers, so only later segments and the live journal are replayed
+    segments it covers are left over when a save stopped before deleting them, they are deleted here
+    */
+    public int Replay(Function<String, Vehicle> FindByRegNumber, BookingService Service) throws IOException
+    {
+        DeleteSegmentsUpTo(CoveredSegment);
+        return Replay(JournalPath, CoveredSegment, FindByRegNumber, Service);
+    }
+
+    /**
+    the same replay without opening a journal, nothing on disk is created, cut or deleted, so it is safe next to a running instance
+    records for a plate no vehicle has, or that no longer fit, are counted and reported on stderr rather than dropped silently
+    */
+    static int Replay(Path JournalPath, long CoveredSegment, Function<String, Vehicle> FindByRegNumber, BookingService Service) throws IOException
+    {
+        int[] NumApplied = {0};
+        int[] NumUnknownPlate = {0};
+        int[] NumRejected = {0};
+        ArrayList<Path> Segments = RotatedSegments(JournalPath);
+        Segments.add(JournalPath);
+
+        for(Path Segment : Segments)
+        {
+            if(!Files.exists(Segment) || (Segment != JournalPath && SegmentNumber(Segment) <= CoveredSegment))
+            {
+                continue;
+            }
+
+            ReadRecords(Segment, (Op, Plate, From, To, NewFrom, NewTo) ->
+            {
+                Vehicle Target = FindByRegNumber.apply(Plate);
+
+                if(Target == null)
+                {
+                    ++NumUnknownPlate[0];
+                    return;
+                }
+
+                FBooking Booking = new FBooking(FDate.FromInt64(From), FDate.FromInt64(To));
+
+                boolean Applied = switch(Op)
+                {
+                    case OpAdd -> Service.TryBook(Target, Booking);
+                    case OpCancel -> Service.TryCancel(Target, Booking);
+                    case OpMove -> Service.TryMove(Target, Booking, new FBooking(FDate.FromInt64(NewFrom), FDate.FromInt64(NewTo)));
+                    default -> false;
+                };
+
+                NumApplied[0] += Applied ? 1 : 0;
+                NumRejected[0] += Applied ? 0 : 1;
+            });
+        }
+
+        if(NumUnknownPlate[0] + NumRejected[0] > 0)
+        {
+            System.err.println(JournalPath + ": replayed " + NumApplied[0] + " records, " + NumUnknownPlate[0] + " name a plate no vehicle has and "
+            + NumRejected[0] + " no longer apply, those were not replayed");
+        }
+
+        return NumApplied[0];
+    }
+
+    interface IRecordVisitor
+    {
+        /** NewFrom and NewTo are only set for a move */
+        void Visit(byte Op, String Plate, long From, long To, long NewFrom, long NewTo);
+    }
+
+    /** every complete record of one journal file in order, returns the length of the file up to the end of the last of them */
+    static long ReadRecords(Path Segment, IRecordVisitor Visitor) throws IOException
+    {
+        ByteBuffer Buffer = ByteBuffer.wrap(Files.readAllBytes(Segment));
+        int Complete = 0;
+
+        try
+        {
+            while(Buffer.hasRemaining())
+            {
+                byte Op = Buffer.get();
+                int PlateLength = Buffer.get();
+                PlateLength = PlateLength >= 0 ? PlateLength : ((PlateLength & 0x7F) << 8) | (Buffer.get() & 0xFF);
+                byte[] Plate = new byte[PlateLength];
+                Buffer.get(Plate);
+                long From = Buffer.getLong();
+                long To = Buffer.getLong();
+                long NewFrom = Op == OpMove ? Buffer.getLong() : 0;
+                long NewTo = Op == OpMove ? Buffer.getLong() : 0;
+
+                Complete = Buffer.position();
+                Visitor.Visit(Op, new String(Plate, StandardCharsets.UTF_8), From, To, NewFrom, NewTo);
+            }
+        }
+        catch(BufferUnderflowException TornTail)
+        {
+            //the last record was cut short by a crash while it was being written, it is dropped here and cut off the live journal on open
+        }
+
+        return Complete;
+    }
+}
+
+/** per day bitset of booked fleet ids, so free vehicles for a range fall out of a few word-wise set operations */
+final class FleetOccupancyIndex
+{
+    /** longer bookings are kept as one range instead of a bit in every day, so a decades long one costs an entry and not a bitset per day */
+    static final int MaxBitmapDays = 366;
+
+    private final ConcurrentHashMap<Integer, BitSet> BookedByDay = new ConcurrentHashMap<Integer, BitSet>();
+    private final ConcurrentHashMap<Byte, BitSet> VehiclesByType = new ConcurrentHashMap<Byte, BitSet>();
+
+    /** fleet id, first day and end day of every booking longer than MaxBitmapDays, guarded by itself */
+    private final ArrayList<int[]> LongBookings = new ArrayList<int[]>();
+
+    public void AddVehicle(Vehicle NewVehicle)
+    {
+        BitSet OfType = VehiclesByType.computeIfAbsent(FleetColumnStore.TypeCodeOf(NewVehicle), Ignored -> new BitSet());
+
+        synchronized(OfType)
+        {
+            OfType.set(NewVehicle.FleetId);
+        }
+
+        long[] Packed = NewVehicle.Bookings.ToPackedArray();
+
+        for(int Index = 0; Index < Packed.length; Index += 2)
+        {
+            MarkBooked(NewVehicle.FleetId, Packed[Index], Packed[Index + 1]);
+        }
+    }
+
+    /** a booking holds every day from its first up to but not including its last, each day is locked on its own */
+    public void MarkBooked(int FleetId, long From, long To)
+    {
+        int FirstDay = FDate.EpochDayOf(From);
+        int LastDay = FDate.EpochDayOf(To);
+
+        if(LastDay - FirstDay > MaxBitmapDays)
+        {
+            synchronized(LongBookings)
+            {
+                LongBookings.add(new int[] {FleetId, FirstDay, LastDay});
+            }
+
+            return;
+        }
+
+        for(int Day = FirstDay; Day < LastDay; ++Day)
+        {
+            BitSet Booked = BookedByDay.computeIfAbsent(Day, Ignored -> new BitSet());
+
+            synchronized(Booked)
+            {
+                Booked.set(FleetId);
+            }
+        }
+    }
+
+    public BitSet FindFree(FDate From, FDate To, String TypeOption)
+    {
+        return FindFree(From, To, FleetColumnStore.TypeCodeOf(TypeOption));
+    }
+
+    /** bookings of one vehicle never share a day, so the days of a cancelled one can simply be cleared */
+    public void ClearBooked(int FleetId, long From, long To)
+    {
+        int FirstDay = FDate.EpochDayOf(From);
+        int LastDay = FDate.EpochDayOf(To);
+
+        if(LastDay - FirstDay > MaxBitmapDays)
+        {
+            synchronized(LongBookings)
+            {
+                LongBookings.removeIf(Range -> Range[0] == FleetId && Range[1] == FirstDay && Range[2] == LastDay);
+            }
+
+            return;
+        }
+
+        for(int Day = FirstDay; Day < LastDay; ++Day)
+        {
+            BitSet Booked = BookedByDay.get(Day);
+
+            if(Booked != null)
+            {
+                synchronized(Booked)
+                {
+                    Booked.clear(FleetId);
+                }
+            }
+        }
+    }
+
+    /** fleet ids of the given type with no booking touching any day in [From, To) */
+    public BitSet FindFree(FDate From, FDate To, byte TypeCode)
+    {
+        BitSet OfType = VehiclesByType.get(TypeCode);
+        BitSet Result = new BitSet();
+
+        if(OfType != null)
+        {
+            synchronized(OfType)
+            {
+                Result.or(OfType);
+            }
+        }
+
+        int FirstDay = From.ToEpochDay();
+        int LastDay = To.ToEpochDay();
+
+        for(int Day = FirstDay; Day < LastDay && !Result.isEmpty(); ++Day)
+        {
+            BitSet Booked = BookedByDay.get(Day);
+
+            if(Booked != null)
+            {
+                synchronized(Booked)
+                {
+                    Result.andNot(Booked);
+                }
+            }
+        }
+
+        synchronized(LongBookings)
+        {
+            for(int[] Range : LongBookings)
+            {
+                if(Range[1] < LastDay && FirstDay < Range[2])
+                {
+                    Result.clear(Range[0]);
+                }
+            }
+        }
+
+        return Result;
+    }
+}
+
+/**
+booked vehicle days per calendar month, split by model, color and type, kept current as bookings are made
+vehicles joining the fleet are aggregated in parallel into private totals that are merged in once per batch
+*/
+final class FleetAnalytics
+{
+    enum EDimension
+    {
+        Model,
+        Color,
+        Type,
+        Month
+    }
+
+    /** booked vehicle days of one month, indexed by dictionary id or type code */
+    static final class FMonthTotals
+    {
+        long[] ByModel = new long[0];
+        long[] ByColor = new long[0];
+        final long[] ByType = new long[3];
+        long Total = 0;
+
+        private static long[] Add(long[] Totals, int Id, long Days)
+        {
+            Totals = Id < Totals.length ? Totals : Arrays.copyOf(Totals, Id + 1);
+            Totals[Id] += Days;
+            return Totals;
+        }
+
+        synchronized void Add(int ModelId, int ColorId, int TypeCode, long Days)
+        {
+            ByModel = Add(ByModel, ModelId, Days);
+            ByColor = Add(ByColor, ColorId, Days);
+            ByType[TypeCode] += Days;
+            Total += Days;
+        }
+
+        synchronized void Merge(FMonthTotals Other)
+        {
+            for(int Id = 0; Id < Other.ByModel.length; ++Id)
+            {
+                ByModel = Add(ByModel, Id, Other.ByModel[Id]);
+            }
+
+            for(int Id = 0; Id < Other.ByColor.length; ++Id)
+            {
+                ByColor = Add(ByColor, Id, Other.ByColor[Id]);
+            }
+
+            for(int Type = 0; Type < ByType.length; ++Type)
+            {
+                ByType[Type] += Other.ByType[Type];
+            }
+
+            Total += Other.Total;
+        }
+
+        synchronized long Get(EDimension Dimension, int Id)
+        {
+            return switch(Dimension)
+            {
+                case Model -> Id < ByModel.length ? ByModel[Id] : 0;
+                case Color -> Id < ByColor.length ? ByColor[Id] : 0;
+                case Type -> ByType[Id];
+                case Month -> Total;
+            };
+        }
+    }
+
+    /** month keys are Year * 12 + Month - 1 */
+    static final class FCube
+    {
+        final Map<Integer, FMonthTotals> Months;
+
+        FCube(Map<Integer, FMonthTotals> InMonths)
+        {
+            Months = InMonths;
+        }
+
+        /** spreads [From, To) over the months it touches, Sign is -1 to take a booking back out */
+        void AddBooking(int ModelId, int ColorId, int TypeCode, long From, long To, int Sign)
+        {
+            int Year = (int)(From >> 16);
+            int Month = (int)((From >> 8) & 0xFF);
+            int Day = FDate.EpochDayOf(From);
+            int LastDay = FDate.EpochDayOf(To);
+
+            while(Day < LastDay)
+            {
+                int NextYear = Month == 12 ? Year + 1 : Year;
+                int NextMonth = Month == 12 ? 1 : Month + 1;
+                int MonthEnd = Math.min(LastDay, FDate.EpochDayOf(NextYear, NextMonth, 1));
+
+                Months.computeIfAbsent(Year * 12 + Month - 1, Ignored -> new FMonthTotals()).Add(ModelId, ColorId, TypeCode, Sign * (MonthEnd - Day));
+
+                Day = MonthEnd;
+                Year = NextYear;
+                Month = NextMonth;
+            }
+        }
+
+        void Merge(FCube Other)
+        {
+            for(Map.Entry<Integer, FMonthTotals> Entry : Other.Months.entrySet())
+            {
+                Months.computeIfAbsent(Entry.getKey(), Ignored -> new FMonthTotals()).Merge(Entry.getValue());
+            }
+        }
+    }
+
+    static final class FUtilizationRow
+    {
+        public final String Group;
+        public final int MonthKey;
+        public final long BookedDays;
+        public final long AvailableDays;
+
+        FUtilizationRow(String InGroup, int InMonthKey, long InBookedDays, long InAvailableDays)
+        {
+            Group = InGroup;
+            MonthKey = InMonthKey;
+            BookedDays = InBookedDays;
+            AvailableDays = InAvailableDays;
+        }
+
+        public double Percent()
+        {
+            return AvailableDays == 0 ? 0 : BookedDays * 100.0 / AvailableDays;
+        }
+
+        public String MonthString()
+        {
+            return (MonthKey / 12) + "/" + (MonthKey % 12 + 1);
+        }
+
+        @Override public String toString()
+        {
+            return String.format(Locale.ROOT, "%-12s %-8s %10d / %10d days %6.2f%%", Group, MonthString(), BookedDays, AvailableDays, Percent());
+        }
+    }
+
+    private static final String[] TypeNames = {"Car", "Bike", "Lorry"};
+
+    /** a hundred years, a report longer than that is a typo and would only build a huge answer */
+    static final int MaxMonths = 1200;
+
+    private final FleetColumnStore Columns;
+    private final FCube Totals = new FCube(new ConcurrentHashMap<Integer, FMonthTotals>());
+
+    FleetAnalytics(FleetColumnStore InColumns)
+    {
+        Columns = InColumns;
+    }
+
+    public static int MonthKey(int Year, int Month)
+    {
+        return Year * 12 + Month - 1;
+    }
+
+    /** Year/Month as a month key */
+    public static int ParseMonth(String Source)
+    {
+        String[] Parts = Source.split("/");
+
+        if(Parts.length != 2)
+        {
+            throw new IllegalArgumentException("expected Year/Month, got " + Source);
+        }
+
+        int Month = Integer.parseUnsignedInt(Parts[1]);
+
+        if(Month < 1 || Month > 12)
+        {
+            throw new IllegalArgumentException("invalid month " + Source);
+        }
+
+        int Year = Integer.parseUnsignedInt(Parts[0]);
+
+        if(Year < 1 || Year > 9999)
+        {
+            throw new IllegalArgumentException("invalid year " + Source);
+        }
+
+        return MonthKey(Year, Month);
+    }
+
+    /** the vehicles must already be in the column store and not yet visible to bookings */
+    public void AddVehicles(java.util.List<Vehicle> NewVehicles)
+    {
+        FCube Batch = NewVehicles.parallelStream().collect(() -> new FCube(new HashMap<Integer, FMonthTotals>()), (Cube, Each) ->
+        {
+            long[] Packed = Each.Bookings.ToPackedArray();
+
+            for(int Index = 0; Index < Packed.length; Index += 2)
+            {
+                AddBooking(Cube, Each.FleetId, Packed[Index], Packed[Index + 1], 1);
+            }
+        }, FCube::Merge);
+
+        Totals.Merge(Batch);
+    }
+
+    /** called for every booking that goes in after the vehicle joined */
+    public void OnBooked(int FleetId, long From, long To)
+    {
+        AddBooking(Totals, FleetId, From, To, 1);
+    }
+
+    public void OnCancelled(int FleetId, long From, long To)
+    {
+        AddBooking(Totals, FleetId, From, To, -1);
+    }
+
+    private void AddBooking(FCube Cube, int FleetId, long From, long To, int Sign)
+    {
+        FleetColumnStore.FSegment Segment = Columns.Segment(Columns.TypeCodeAt(FleetId));
+        int Row = Columns.RowAt(FleetId);
+        Cube.AddBooking(Segment.ModelIds[Row], Segment.ColorIds[Row], Columns.TypeCodeAt(FleetId), From, To, Sign);
+    }
+
+    /** first and last month holding any booking, null when there are none */
+    public int[] MonthRange()
+    {
+        int First = Integer.MAX_VALUE;
+        int Last = Integer.MIN_VALUE;
+
+        for(int Key : Totals.Months.keySet())
+        {
+            First = Math.min(First, Key);
+            Last = Math.max(Last, Key);
+        }
+
+        return First <= Last ? new int[] {First, Last} : null;
+    }
+
+    /** one row per group and month in [FirstMonth, LastMonth], available days are the group's current size times the days in the month */
+    /** IllegalArgumentException when LastMonth comes first or the range spans more than MaxMonths, every month is a row per group */
+    public ArrayList<FUtilizationRow> Utilization(EDimension Dimension, int FirstMonth, int LastMonth)
+    {
+        if(LastMonth < FirstMonth)
+        {
+            throw new IllegalArgumentException("the last month comes before the first");
+        }
+
+        if(LastMonth - FirstMonth >= MaxMonths)
+        {
+            throw new IllegalArgumentException("at most " + MaxMonths + " months at a time, give a narrower from and to");
+        }
+
+        ArrayList<FUtilizationRow> Result = new ArrayList<FUtilizationRow>();
+        int NumGroups = switch(Dimension)
+        {
+            case Model -> Columns.Models.Size();
+            case Color -> Columns.Colors.Size();
+            case Type -> TypeNames.length;
+            case Month -> 1;
+        };
+
+        for(int Group = 0; Group < NumGroups; ++Group)
+        {
+            long NumVehicles = 0;
+
+            for(int Type = 0; Type < TypeNames.length; ++Type)
+            {
+                FleetColumnStore.FSegment Segment = Columns.Segment(Type);
+
+                NumVehicles += switch(Dimension)
+                {
+                    case Model -> Segment.ModelCount(Group);
+                    case Color -> Segment.ColorCount(Group);
+                    case Type -> Type == Group ? Segment.Size : 0;
+                    case Month -> Segment.Size;
+                };
+            }
+
+            String Name = switch(Dimension)
+            {
+                case Model -> Columns.Models.NameOf(Group);
+                case Color -> Columns.Colors.NameOf(Group);
+                case Type -> TypeNames[Group];
+                case Month -> "All";
+            };
+
+            for(int Key = FirstMonth; Key <= LastMonth; ++Key)
+            {
+                int Year = Key / 12;
+                int Month = Key % 12 + 1;
+                FMonthTotals Totals = this.Totals.Months.get(Key);
+
+                Result.add(new FUtilizationRow(Name, Key, Totals != null ? Totals.Get(Dimension, Group) : 0, NumVehicles * FDate.DaysInMonth(Year, Month)));
+            }
+        }
+
+        return Result;
+    }
+}
+
+/**
+the only way bookings are added to vehicles that other threads can see
+a booking is checked, inserted, indexed and journaled under the lock stripe of its vehicle,
+so there is no double booking and bookings for vehicles on different stripes never wait on each other
+*/
+final class BookingService
+{
+    private static final int NumStripes = 256;
+
+    private final Object[] Stripes = new Object[NumStripes];
+    private final FleetOccupancyIndex Occupancy;
+    private final FleetAnalytics Analytics;
+    private volatile BookingJournal Journal;
+
+    /** vehicles as they were at the cut of the save in progress, filled in just before their first change, null between saves */
+    private volatile Vehicle[] CutCopies;
+    private long CutEpoch;
+
+    BookingService(FleetOccupancyIndex Occupancy, FleetAnalytics Analytics)
+    {
+        this.Occupancy = Occupancy;
+        this.Analytics = Analytics;
+
+        for(int Index = 0; Index < NumStripes; ++Index)
+        {
+            Stripes[Index] = new Object();
+        }
+    }
+
+    /** bookings made before this are not journaled, which is what replaying the journal itself needs */
+    public void SetJournal(BookingJournal Journal)
+    {
+        this.Journal = Journal;
+    }
+
+    private Object StripeOf(Vehicle Target)
+    {
+        return Stripes[Target.FleetId & (NumStripes - 1)];
+    }
+
+    interface FStripedAction<T>
+    {
+        T Run() throws IOException;
+    }
+
+    /** runs Action with every stripe held in order, so no booking changes and no journal record is queued meanwhile */
+    public <T> T WithAllStripes(FStripedAction<T> Action) throws IOException
+    {
+        return WithStripes(0, Action);
+    }
+
+    private <T> T WithStripes(int First, FStripedAction<T> Action) throws IOException
+    {
+        if(First == NumStripes)
+        {
+            return Action.Run();
+        }
+
+        synchronized(Stripes[First])
+        {
+            return WithStripes(First + 1, Action);
+        }
+    }
+
+    /**
+    starts a save, AtCut runs with every stripe held, which is the only pause bookings see
+    from then until EndSnapshot a vehicle is copied right before its first change, so SnapshotAtCut still gives it as it was at the cut
+    */
+    public <T> T BeginSnapshot(int NumVehicles, FStripedAction<T> AtCut) throws IOException
+    {
+        return WithAllStripes(() ->
+        {
+            T Result = AtCut.Run();
+            ++CutEpoch;
+            CutCopies = new Vehicle[NumVehicles];
+            return Result;
+        });
+    }
+
+    /** Target as it was when BeginSnapshot cut, it must have been in the fleet by then */
+    public Vehicle SnapshotAtCut(Vehicle Target)
+    {
+        synchronized(StripeOf(Target))
+        {
+            if(Target.SnapshotEpoch == CutEpoch)
+            {
+                return CutCopies[Target.FleetId];
+            }
+
+            //unchanged since the cut, later changes need no copy once this one is taken
+            Target.SnapshotEpoch = CutEpoch;
+            return Target.Snapshot();
+        }
+    }
+
+    public void EndSnapshot()
+    {
+        CutCopies = null;
+    }
+
+    /** called with the stripe of Target held before anything of it changes */
+    private void CopyBeforeChange(Vehicle Target)
+    {
+        Vehicle[] Copies = CutCopies;
+
+        if(Copies != null && Target.SnapshotEpoch != CutEpoch && Target.FleetId < Copies.length)
+        {
+            Copies[Target.FleetId] = Target.Snapshot();
+            Target.SnapshotEpoch = CutEpoch;
+        }
+    }
+
+    /** the vehicle already took the booking, if its days cannot be marked Undo gives it back so the vehicle and the index never disagree */
+    private void MarkOrUndo(Vehicle Target, long From, long To, Runnable Undo)
+    {
+        try
+        {
+            Occupancy.MarkBooked(Target.FleetId, From, To);
+        }
+        catch(RuntimeException | Error Failure)
+        {
+            Occupancy.ClearBooked(Target.FleetId, From, To);
+            Undo.run();
+            throw Failure;
+        }
+    }
+
+    /** true only once the booking is journaled, see AwaitWritten */
+    public boolean TryBook(Vehicle Target, FBooking Booking)
+    {
+        CompletableFuture<Void> Written = null;
+
+        synchronized(StripeOf(Target))
+        {
+            CopyBeforeChange(Target);
+
+            if(!Target.AddBooking(Booking))
+            {
+                return false;
+            }
+
+            MarkOrUndo(Target, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64(), () -> Target.CancelBooking(Booking));
+            Analytics.OnBooked(Target.FleetId, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64());
+
+            if(Journal != null)
+            {
+                Written = Journal.AppendAdd(Target.RegNumber, Booking);
+            }
+        }
+
+        AwaitWritten(Written);
+        return true;
+    }
+
+    public boolean TryCancel(Vehicle Target, FBooking Booking)
+    {
+        CompletableFuture<Void> Written = null;
+
+        synchronized(StripeOf(Target))
+        {
+            CopyBeforeChange(Target);
+
+            if(!Target.CancelBooking(Booking))
+            {
+                return false;
+            }
+
+            Occupancy.ClearBooked(Target.FleetId, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64());
+            Analytics.OnCancelled(Target.FleetId, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64());
+
+            if(Journal != null)
+            {
+                Written = Journal.AppendCancel(Target.RegNumber, Booking);
+            }
+        }
+
+        AwaitWritten(Written);
+        return true;
+    }
+
+    /** nothing changes unless the vehicle has Booking and NewBooking fits once it is gone */
+    public boolean TryMove(Vehicle Target, FBooking Booking, FBooking NewBooking)
+    {
+        CompletableFuture<Void> Written = null;
+
+        synchronized(StripeOf(Target))
+        {
+            CopyBeforeChange(Target);
+
+            if(!Target.MoveBooking(Booking, NewBooking))
+            {
+                return false;
+            }
+
+            Occupancy.ClearBooked(Target.FleetId, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64());
+            MarkOrUndo(Target, NewBooking.HiredFrom.ToInt64(), NewBooking.HiredTo.ToInt64(), () ->
+            {
+                Target.MoveBooking(NewBooking, Booking);
+                Occupancy.MarkBooked(Target.FleetId, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64());
+            });
+            Analytics.OnCancelled(Target.FleetId, Booking.HiredFrom.ToInt64(), Booking.HiredTo.ToInt64());
+            Analytics.OnBooked(Target.FleetId, NewBooking.HiredFrom.ToInt64(), NewBooking.HiredTo.ToInt64());
+
+            if(Journal != null)
+            {
+                Written = Journal.AppendMove(Target.RegNumber, Booking, NewBooking);
+            }
+        }
+
+        AwaitWritten(Written);
+        return true;
+    }
+
+    /** takes the bookings out of the analytics while Apply changes what they are grouped by, then counts them again */
+    public void Regroup(Vehicle Target, Runnable Apply)
+    {
+        synchronized(StripeOf(Target))
+        {
+            CopyBeforeChange(Target);
+            long[] Dates = Target.Bookings.ToPackedArray();
+
+            for(int Index = 0; Index < Dates.length; Index += 2)
+            {
+                Analytics.OnCancelled(Target.FleetId, Dates[Index], Dates[Index + 1]);
+            }
+
+            Apply.run();
+
+            for(int Index = 0; Index < Dates.length; Index += 2)
+            {
+                Analytics.OnBooked(Target.FleetId, Dates[Index], Dates[Index + 1]);
+            }
+        }
+    }
+
+    /**
+    waits outside the stripe for the group commit, so concurrent changes still share one fsync
+    a failed write throws, the change itself stays in memory and only a later save makes it durable
+    */
+    private static void AwaitWritten(CompletableFuture<Void> Written)
+    {
+        if(Written == null)
+        {
+            return;
+        }
+
+        try
+        {
+            Written.join();
+        }
+        catch(CompletionException Exception)
+        {
+            Throwable Cause = Exception.getCause();
+            throw new UncheckedIOException("the change could not be written to the journal", Cause instanceof IOException AsIO ? AsIO : new IOException(Cause));
+        }
+    }
+
+    /**
+    merges a batch sorted by start into one vehicle under a single lock, see FBookingIndex.AddSorted
+    the future completes once every accepted booking is journaled
+    */
+    public CompletableFuture<Void> TryBookSorted(Vehicle Target, long[] From, long[] To, int Count, boolean[] Accepted)
+    {
+        ArrayList<CompletableFuture<Void>> Written = new ArrayList<CompletableFuture<Void>>();
+
+        synchronized(StripeOf(Target))
+        {
+            CopyBeforeChange(Target);
+            Target.Bookings.AddSorted(From, To, Count, Accepted);
+
+            for(int Index = 0; Index < Count; ++Index)
+            {
+                if(Accepted[Index])
+                {
+                    FBooking Booking = new FBooking(FDate.FromInt64(From[Index]), FDate.FromInt64(To[Index]));
+                    MarkOrUndo(Target, From[Index], To[Index], () -> Target.CancelBooking(Booking));
+                    Analytics.OnBooked(Target.FleetId, From[Index], To[Index]);
+
+                    if(Journal != null)
+                    {
+                        Written.add(Journal.AppendAdd(Target.RegNumber, Booking));
+                    }
+                }
+            }
+        }
+
+        return CompletableFuture.allOf(Written.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /** consistent copy of the vehicle and its bookings */
+    public Vehicle Snapshot(Vehicle Target)
+    {
+        synchronized(StripeOf(Target))
+        {
+            return Target.Snapshot();
+        }
+    }
+
+    /** consistent copy of just the bookings, which shares their arrays until the vehicle is booked again */
+    public FBookingIndex SnapshotBookings(Vehicle Target)
+    {
+        synchronized(StripeOf(Target))
+        {
+            return Target.Bookings.Copy();
+        }
+    }
+}
+
+/**
+bulk booking import from csv rows of plate,from,to or from a booking journal file
+rows are grouped per vehicle and sorted by start once, then every vehicle merges its group in one pass, vehicles in parallel
+when rows overlap each other the one starting first wins, equal starts go to the earlier row
+*/
+final class BookingImporter
+{
+    enum ERowStatus
+    {
+        Booked,
+        Conflict,
+        UnknownPlate,
+        Malformed
+    }
+
+    /** what happened to each row, in file order */
+    static final class FImportReport
+    {
+        public int NumRows = 0;
+        public int[] LineNumbers = new int[16];
+        public String[] Plates = new String[16];
+        public long[] From = new long[16];
+        public long[] To = new long[16];
+        public ERowStatus[] Statuses = new ERowStatus[16];
+        public final int[] NumByStatus = new int[ERowStatus.values().length];
+        public long Nanos;
+
+        void AddRow(int LineNumber, String Plate, long RowFrom, long RowTo, ERowStatus Status)
+        {
+            if(NumRows == Plates.length)
+            {
+                LineNumbers = Arrays.copyOf(LineNumbers, NumRows * 2);
+                Plates = Arrays.copyOf(Plates, NumRows * 2);
+                From = Arrays.copyOf(From, NumRows * 2);
+                To = Arrays.copyOf(To, NumRows * 2);
+                Statuses = Arrays.copyOf(Statuses, NumRows * 2);
+            }
+
+            LineNumbers[NumRows] = LineNumber;
+            Plates[NumRows] = Plate;
+            From[NumRows] = RowFrom;
+            To[NumRows] = RowTo;
+            Statuses[NumRows++] = Status;
+        }
+
+        /** one csv line per row that did not go in, or every row when All is set */
+        public void Write(Writer Out, boolean All) throws IOException
+        {
+            Out.write("line,plate,from,to,status\n");
+
+            for(int Row = 0; Row < NumRows; ++Row)
+            {
+                if(All || Statuses[Row] != ERowStatus.Booked)
+                {
+                    Out.write(LineNumbers[Row] + "," + Plates[Row] + "," + (Statuses[Row] == ERowStatus.Malformed ? "," : FDate.FromInt64(From[Row]) + "," + FDate.FromInt64(To[Row]))
+                    + "," + Statuses[Row].name() + "\n");
+                }
+            }
+        }
+
+        @Override public String toString()
+        {
+            return NumRows + " rows: " + NumByStatus[ERowStatus.Booked.ordinal()] + " booked, " + NumByStatus[ERowStatus.Conflict.ordinal()] + " conflicts, "
+            + NumByStatus[ERowStatus.UnknownPlate.ordinal()] + " unknown plates, " + NumByStatus[ERowStatus.Malformed.ordinal()] + " malformed in " + (Nanos / 1000000) + " ms";
+        }
+    }
+
+    /** packed dates past year 32767 would not fit the sort key Apply builds */
+    private static ERowStatus StatusOf(long From, long To)
+    {
+        return From < To && To < (1L << 31) ? ERowStatus.Booked : ERowStatus.Malformed;
+    }
+
+    /** journal files are recognised by name, anything else is read as csv */
+    public static boolean IsJournalFile(File RowsFile)
+    {
+        return RowsFile.getName().matches(".*\\.journal(\\.[0-9]+)?");
+    }
+
+    public static FImportReport Read(File RowsFile) throws IOException
+    {
+        FImportReport Result = new FImportReport();
+
+        if(IsJournalFile(RowsFile))
+        {
+            ReadJournal(RowsFile, Result);
+            return Result;
+        }
+
+        try(BufferedReader In = new BufferedReader(new FileReader(RowsFile), 1 << 16))
+        {
+            int LineNumber = 0;
+
+            for(String Line = In.readLine(); Line != null; Line = In.readLine())
+            {
+                ++LineNumber;
+
+                if(Line.isBlank() || (LineNumber == 1 && Line.toLowerCase().startsWith("plate")))
+                {
+                    continue;
+                }
+
+                String[] Fields = Line.split(",");
+                String Plate = Fields[0].trim();
+
+                try
+                {
+                    long From = FDate.Parse(Fields[1].trim());
+                    long To = FDate.Parse(Fields[2].trim());
+
+                    Result.AddRow(LineNumber, Plate, From, To, Fields.length == 3 ? StatusOf(From, To) : ERowStatus.Malformed);
+                }
+                catch(IllegalArgumentException | ArrayIndexOutOfBoundsException Exception)
+                {
+                    Result.AddRow(LineNumber, Plate, 0, 0, ERowStatus.Malformed);
+                }
+            }
+        }
+
+        return Result;
+    }
+
+    /**
+    a journal is folded down to the bookings it leaves in place, cancels and moves apply in order to the adds before them in the same file
+    the row of a booking is the record that added it, with the dates of its last move
+    a cancel or move of a booking from before the file cannot be imported as new rows, so it rejects the whole file
+    */
+    private static void ReadJournal(File RowsFile, FImportReport Result) throws IOException
+    {
+        ArrayList<long[]> Rows = new ArrayList<long[]>();
+        ArrayList<String> Plates = new ArrayList<String>();
+        HashMap<String, Integer> Live = new HashMap<String, Integer>();
+        int[] Record = {0};
+        String[] Rejected = {null};
+
+        BookingJournal.ReadRecords(RowsFile.toPath(), (Op, Plate, From, To, NewFrom, NewTo) ->
+        {
+            ++Record[0];
+
+            if(Rejected[0] != null)
+            {
+                return;
+            }
+
+            if(Op == BookingJournal.OpAdd)
+            {
+                Live.put(Plate + " " + From + " " + To, Rows.size());
+                Rows.add(new long[] {Record[0], From, To});
+                Plates.add(Plate);
+                return;
+            }
+
+            Integer Row = Live.remove(Plate + " " + From + " " + To);
+
+            if(Row == null || (Op != BookingJournal.OpCancel && Op != BookingJournal.OpMove))
+            {
+                Rejected[0] = "record " + Record[0] + " of " + RowsFile + " changes a booking of " + Plate + " the file does not add";
+            }
+            else if(Op == BookingJournal.OpMove)
+            {
+                Rows.get(Row)[1] = NewFrom;
+                Rows.get(Row)[2] = NewTo;
+                Live.put(Plate + " " + NewFrom + " " + NewTo, Row);
+            }
+            else
+            {
+                Rows.set(Row, null);
+            }
+        });
+
+        if(Rejected[0] != null)
+        {
+            throw new IOException(Rejected[0]);
+        }
+
+        for(int Index = 0; Index < Rows.size(); ++Index)
+        {
+            long[] Row = Rows.get(Index);
+
+            if(Row != null)
+            {
+                Result.AddRow((int)Row[0], Plates.get(Index), Row[1], Row[2], StatusOf(Row[1], Row[2]));
+            }
+        }
+    }
+
+    /** imports into the fleet file and folds the result straight into it, the rows that did not go in are listed in the report */
+    public static void ImportIntoFleet(File VehicleFile, File RowsFile, File ReportFile) throws IOException
+    {
+        VehicleManager Manager = new VehicleManager(VehicleFile);
+        Manager.OpenFleet(-1);
+
+        BookingImporter.FImportReport Report = Manager.ImportBookings(RowsFile);
+        Manager.CompactJournal();
+
+        System.out.println("imported " + RowsFile + " into " + VehicleFile + ": " + Report);
+
+        if(ReportFile == null)
+        {
+            Writer Out = new OutputStreamWriter(System.out);
+            Report.Write(Out, false);
+            Out.flush();
+            return;
+        }
+
+        try(Writer Out = new BufferedWriter(new FileWriter(ReportFile)))
+        {
+            Report.Write(Out, false);
+        }
+    }
+
+    /** books every row still marked Booked and marks it Conflict or UnknownPlate when it cannot be */
+    public static void Apply(FImportReport Rows, Function<String, Vehicle> FindByRegNumber, BookingService Service)
+    {
+        long StartTime = System.nanoTime();
+        Vehicle[] Targets = new Vehicle[Rows.NumRows];
+        int MaxFleetId = -1;
+
+        for(int Row = 0; Row < Rows.NumRows; ++Row)
+        {
+            if(Rows.Statuses[Row] == ERowStatus.Booked)
+            {
+                Targets[Row] = FindByRegNumber.apply(Rows.Plates[Row]);
+
+                if(Targets[Row] == null)
+                {
+                    Rows.Statuses[Row] = ERowStatus.UnknownPlate;
+                }
+                else
+                {
+                    MaxFleetId = Math.max(MaxFleetId, Targets[Row].FleetId);
+                }
+            }
+        }
+
+        //counting sort by fleet id groups the rows, GroupStart[Id] .. GroupStart[Id + 1] is one vehicle
+        int[] GroupStart = new int[MaxFleetId + 2];
+
+        for(int Row = 0; Row < Rows.NumRows; ++Row)
+        {
+            if(Rows.Statuses[Row] == ERowStatus.Booked)
+            {
+                ++GroupStart[Targets[Row].FleetId + 1];
+            }
+        }
+
+        for(int Id = 0; Id <= MaxFleetId; ++Id)
+        {
+            GroupStart[Id + 1] += GroupStart[Id];
+        }
+
+        //start date in the high half and row in the low half, so one sort per group orders by start and then by file order
+        long[] Keys = new long[GroupStart[MaxFleetId + 1]];
+        int[] Fill = Arrays.copyOf(GroupStart, MaxFleetId + 1);
+
+        for(int Row = 0; Row < Rows.NumRows; ++Row)
+        {
+            if(Rows.Statuses[Row] == ERowStatus.Booked)
+            {
+                Keys[Fill[Targets[Row].FleetId]++] = (Rows.From[Row] << 32) | Row;
+            }
+        }
+
+        ConcurrentLinkedQueue<CompletableFuture<Void>> Written = new ConcurrentLinkedQueue<CompletableFuture<Void>>();
+
+        java.util.stream.IntStream.rangeClosed(0, MaxFleetId).parallel().forEach(Id ->
+        {
+            int Start = GroupStart[Id];
+            int Count = GroupStart[Id + 1] - Start;
+
+            if(Count == 0)
+            {
+                return;
+            }
+
+            Arrays.sort(Keys, Start, Start + Count);
+
+            long[] From = new long[Count];
+            long[] To = new long[Count];
+            boolean[] Accepted = new boolean[Count];
+
+            for(int Index = 0; Index < Count; ++Index)
+            {
+                int Row = (int)Keys[Start + Index];
+                From[Index] = Rows.From[Row];
+                To[Index] = Rows.To[Row];
+            }
+
+            int FirstRow = (int)Keys[Start];
+            Written.add(Service.TryBookSorted(Targets[FirstRow], From, To, Count, Accepted));
+
+            for(int Index = 0; Index < Count; ++Index)
+            {
+                if(!Accepted[Index])
+                {
+                    Rows.Statuses[(int)Keys[Start + Index]] = ERowStatus.Conflict;
+                }
+            }
+        });
+
+        CompletableFuture.allOf(Written.toArray(new CompletableFuture<?>[0])).join();
+
+        for(int Row = 0; Row < Rows.NumRows; ++Row)
+        {
+            ++Rows.NumByStatus[Rows.Statuses[Row].ordinal()];
+        }
+
+        Rows.Nanos = System.nanoTime() - StartTime;
+    }
+}
+
+/**
+read-only list model over the fleet, or over the ascending fleet ids of a search result when Ids is set
+nothing is copied per row, so building one is O(1) and JList only asks for the rows it paints
+*/
+final class FleetListModel extends AbstractListModel<Vehicle>
+{
+    private static final long serialVersionUID = 1L;
+
+    private final java.util.List<Vehicle> Fleet;
+    private final int[] Ids;
+
+    FleetListModel(java.util.List<Vehicle> Fleet, int[] Ids)
+    {
+        this.Fleet = Fleet;
+        this.Ids = Ids;
+    }
+
+    @Override public int getSize()
+    {
+        return Ids != null ? Ids.length : Fleet.size();
+    }
+
+    @Override public Vehicle getElementAt(int Index)
+    {
+        return Fleet.get(Ids != null ? Ids[Index] : Index);
+    }
+
+    /** for the whole fleet view, after vehicles were appended to the fleet */
+    public void NotifyAppended(int First, int Last)
+    {
+        fireIntervalAdded(this, First, Last);
+    }
+
+    /** repaints the row of a vehicle whose fields changed, if this view shows it */
+    public void NotifyChanged(int FleetId)
+    {
+        int Index = Ids != null ? Arrays.binarySearch(Ids, FleetId) : FleetId;
+
+        if(Index >= 0 && Index < getSize())
+        {
+            fireContentsChanged(this, Index, Index);
+        }
+    }
+}
+
+/**
+counters and latency histograms for the hot paths, published over JMX as VehicleManager:type=FleetMetrics
+set -Dfleet.metrics.file=<path> to also append a dump every fleet.metrics.period seconds, 60 by default
+*/
+final class FleetMetrics implements DynamicMBean
+{
+    static final FleetMetrics Global = new FleetMetrics();
+
+    /**
+    log-linear buckets in the spirit of HdrHistogram: values below 8 are exact,
+    every power of two above is split into 8 sub-buckets, so any value is off by at most 12.5%
+    */
+    static final class FHistogram
+    {
+        private static final int SubBucketBits = 3;
+        private static final int SubBuckets = 1 << SubBucketBits;
+
+        private final AtomicLongArray Counts = new AtomicLongArray(64 * SubBuckets);
+        private final LongAdder Sum = new LongAdder();
+        private final LongAccumulator Max = new LongAccumulator(Math::max, 0);
+
+        static int BucketOf(long Value)
+        {
+            if(Value < SubBuckets)
+            {
+                return (int)Math.max(Value, 0);
+            }
+
+            int Exponent = 63 - Long.numberOfLeadingZeros(Value);
+            int SubBucket = (int)(Value >>> (Exponent - SubBucketBits)) & (SubBuckets - 1);
+            return ((Exponent - SubBucketBits + 1) << SubBucketBits) + SubBucket;
+        }
+
+        static long LowestValueOf(int Bucket)
+        {
+            if(Bucket < SubBuckets)
+            {
+                return Bucket;
+            }
+
+            int Exponent = (Bucket >> SubBucketBits) + SubBucketBits - 1;
+            return (1L << Exponent) | ((long)(Bucket & (SubBuckets - 1)) << (Exponent - SubBucketBits));
+        }
+
+        public void Record(long Value)
+        {
+            Counts.incrementAndGet(BucketOf(Value));
+            Sum.add(Value);
+            Max.accumulate(Value);
+        }
+
+        public long Count()
+        {
+            long Result = 0;
+
+            for(int Bucket = 0; Bucket < Counts.length(); ++Bucket)
+            {
+                Result += Counts.get(Bucket);
+            }
+
+            return Result;
+        }
+
+        public long Mean()
+        {
+            long Count = Count();
+            return Count == 0 ? 0 : Sum.sum() / Count;
+        }
+
+        public long Max()
+        {
+            return Max.get();
+        }
+
+        /** upper edge of the bucket holding the given quantile, never above the largest recorded value */
+        public long Percentile(double Quantile)
+        {
+            long[] Snapshot = new long[Counts.length()];
+            long Total = 0;
+
+            for(int Bucket = 0; Bucket < Snapshot.length; ++Bucket)
+            {
+                Snapshot[Bucket] = Counts.get(Bucket);
+                Total += Snapshot[Bucket];
+            }
+
+            long Target = (long)Math.ceil(Quantile * Total);
+            long Seen = 0;
+
+            for(int Bucket = 0; Bucket < Snapshot.length; ++Bucket)
+            {
+                Seen += Snapshot[Bucket];
+
+                if(Seen >= Target && Seen != 0)
+                {
+                    long UpperEdge = Bucket + 1 < Snapshot.length ? LowestValueOf(Bucket + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(UpperEdge, Max());
+                }
+            }
+
+            return 0;
+        }
+    }
+
+    final FHistogram SearchNanos = new FHistogram();
+    final FHistogram SearchResults = new FHistogram();
+    final LongAdder SearchesDebounced = new LongAdder();
+    final LongAdder SearchesCancelled = new LongAdder();
+    final LongAdder SearchesDiscarded = new LongAdder();
+
+    final FHistogram BookingNanos = new FHistogram();
+    final LongAdder BookingAttempts = new LongAdder();
+    final LongAdder BookingConflicts = new LongAdder();
+
+    final FHistogram LoadNanos = new FHistogram();
+    final FHistogram SaveNanos = new FHistogram();
+    final FHistogram SaveBarrierNanos = new FHistogram();
+    final LongAdder SaveFailures = new LongAdder();
+    final LongAdder BytesWritten = new LongAdder();
+    final LongAdder JournalBatches = new LongAdder();
+
+    private final LinkedHashMap<String, LongSupplier> Attributes = new LinkedHashMap<String, LongSupplier>();
+
+    private FleetMetrics()
+    {
+        AddLatency("Search", SearchNanos);
+        Attributes.put("SearchResultsMean", SearchResults::Mean);
+        Attributes.put("SearchResultsMax", SearchResults::Max);
+        Attributes.put("SearchesDebounced", SearchesDebounced::sum);
+        Attributes.put("SearchesCancelled", SearchesCancelled::sum);
+        Attributes.put("SearchesDiscarded", SearchesDiscarded::sum);
+
+        AddLatency("Booking", BookingNanos);
+        Attributes.put("BookingAttempts", BookingAttempts::sum);
+        Attributes.put("BookingConflicts", BookingConflicts::sum);
+
+        AddLatency("Load", LoadNanos);
+        AddLatency("Save", SaveNanos);
+        AddLatency("SaveBarrier", SaveBarrierNanos);
+        Attributes.put("SaveFailures", SaveFailures::sum);
+        Attributes.put("BytesWritten", BytesWritten::sum);
+        Attributes.put("JournalBatches", JournalBatches::sum);
+    }
+
+    private void AddLatency(String Name, FHistogram Histogram)
+    {
+        Attributes.put(Name + "Count", Histogram::Count);
+        Attributes.put(Name + "MeanMicros", () -> Histogram.Mean() / 1000);
+        Attributes.put(Name + "P50Micros", () -> Histogram.Percentile(0.5) / 1000);
+        Attributes.put(Name + "P99Micros", () -> Histogram.Percentile(0.99) / 1000);
+        Attributes.put(Name + "MaxMicros", () -> Histogram.Max() / 1000);
+    }
+
+    public String Dump()
+    {
+        StringBuilder Result = new StringBuilder();
+
+        for(Map.Entry<String, LongSupplier> Entry : Attributes.entrySet())
+        {
+            Result.append(Result.length() == 0 ? "" : " ").append(Entry.getKey()).append('=').append(Entry.getValue().getAsLong());
+        }
+
+        return Result.toString();
+    }
+
+    /** registers the MBean once and starts the optional file dump */
+    public synchronized void Export()
+    {
+        try
+        {
+            ObjectName Name = new ObjectName("VehicleManager:type=FleetMetrics");
+            MBeanServer Server = ManagementFactory.getPlatformMBeanServer();
+
+            if(Server.isRegistered(Name))
+            {
+                return;
+            }
+
+            Server.registerMBean(this, Name);
+        }
+        catch(JMException Exception)
+        {
+            System.err.println("metrics are not available over JMX: " + Exception);
+        }
+
+        String DumpFile = System.getProperty("fleet.metrics.file");
+
+        if(DumpFile == null)
+        {
+            return;
+        }
+
+        long Period = Long.getLong("fleet.metrics.period", 60);
+
+        ScheduledExecutorService Dumper = Executors.newSingleThreadScheduledExecutor(Runnable ->
+        {
+            Thread DumperThread = new Thread(Runnable, "FleetMetricsDump");
+            DumperThread.setDaemon(true);
+            return DumperThread;
+        });
+
+        Dumper.scheduleAtFixedRate(() ->
+        {
+            try(Writer Out = new FileWriter(DumpFile, true))
+            {
+                Out.write(System.currentTimeMillis() + " " + Dump() + "\n");
+            }
+            catch(IOException Exception)
+            {
+                System.err.println("writing metrics to " + DumpFile + " failed: " + Exception);
+            }
+        }, Period, Period, TimeUnit.SECONDS);
+    }
+
+    @Override public Object getAttribute(String Name) throws AttributeNotFoundException
+    {
+        LongSupplier Value = Attributes.get(Name);
+
+        if(Value == null)
+        {
+            throw new AttributeNotFoundException(Name);
+        }
+
+        return Value.getAsLong();
+    }
+
+    @Override public void setAttribute(Attribute Value) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException(Value.getName() + " is read only");
+    }
+
+    @Override public AttributeList getAttributes(String[] Names)
+    {
+        AttributeList Result = new AttributeList();
+
+        for(String Name : Names)
+        {
+            LongSupplier Value = Attributes.get(Name);
+
+            if(Value != null)
+            {
+                Result.add(new Attribute(Name, Value.getAsLong()));
+            }
+        }
+
+        return Result;
+    }
+
+    @Override public AttributeList setAttributes(AttributeList Values)
+    {
+        return new AttributeList();
+    }
+
+    @Override public Object invoke(String Action, Object[] Params, String[] Signature) throws ReflectionException
+    {
+        throw new ReflectionException(new NoSuchMethodException(Action));
+    }
+
+    @Override public MBeanInfo getMBeanInfo()
+    {
+        MBeanAttributeInfo[] Infos = new MBeanAttributeInfo[Attributes.size()];
+        int Index = 0;
+
+        for(String Name : Attributes.keySet())
+        {
+            Infos[Index++] = new MBeanAttributeInfo(Name, "long", Name, true, false, false);
+        }
+
+        return new MBeanInfo(FleetMetrics.class.getName(), "vehicle manager hot path metrics", Infos, null, null, null);
+    }
+}
+
+/** single worker that debounces keystrokes, drops stale queries and publishes results on the EDT */
+final class VehicleSearchScheduler
+{
+    private static final long DebounceMillis = 40;
+
+    private final VehicleManager Context;
+    private final ScheduledExecutorService Worker;
+    private final AtomicLong Generation = new AtomicLong();
+    private ScheduledFuture<?> Pending;
+
+    /** only touched by the worker thread */
+    private String LastInput;
+    private String LastTypeOption;
+    private int[] LastResult;
+    private int LastFleetSize;
+
+    VehicleSearchScheduler(VehicleManager Context)
+    {
+        this.Context = Context;
+
+        Worker = Executors.newSingleThreadScheduledExecutor(Runnable ->
+        {
+            Thread WorkerThread = new Thread(Runnable, "VehicleSearch");
+            WorkerThread.setDaemon(true);
+            return WorkerThread;
+        });
+    }
+
+    public synchronized void Submit(String SearchInput, String TypeOption)
+    {
+        final long QueryGeneration = Generation.incrementAndGet();
+
+        if(Pending != null && Pending.cancel(false))
+        {
+            FleetMetrics.Global.SearchesDebounced.increment();
+        }
+
+        Pending = Worker.schedule(() -> Run(QueryGeneration, SearchInput, TypeOption), DebounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void Run(long QueryGeneration, String SearchInput, String TypeOption)
+    {
+        BooleanSupplier IsStale = () -> Generation.get() != QueryGeneration;
+
+        int[] Result;
+
+        //anything matching the longer query also matched the one it extends
+        if(LastResult != null && LastFleetSize == Context.GetFleetSize() && TypeOption.equals(LastTypeOption)
+        && Context.CanRefine(LastInput, SearchInput))
+        {
+            Result = Context.SearchVehicleIds(SearchInput, TypeOption, LastResult, IsStale);
+        }
+        else
+        {
+            Result = Context.SearchVehicleIds(SearchInput, TypeOption, null, IsStale);
+        }
+
+        if(Result == null)
+        {
+            return;
+        }
+
+        LastInput = SearchInput;
+        LastTypeOption = TypeOption;
+        LastResult = Result;
+        LastFleetSize = Context.GetFleetSize();
+
+        FleetListModel Searched = Context.ToListModel(Result);
+
+        SwingUtilities.invokeLater(() ->
+        {
+            if(!IsStale.getAsBoolean())
+            {
+                Context.VehicleList.setModel(Searched);
+            }
+            else
+            {
+                FleetMetrics.Global.SearchesDiscarded.increment();
+            }
+        });
+    }
+}
+
+public class VehicleManager implements ActionListener, ListSelectionListener, KeyListener, WindowListener, IVehicleOwner
+{
+    /** vars */
+    private File VehicleFile;
+    private JFrame Frame;
+    public JList<Vehicle> VehicleList;
+    private int SelectedVehicleIndex = -1;
+    private ArrayList<Vehicle> Fleet;
+    private FleetPlateIndex Plates;
+    private FleetListModel FleetModel;
+    private FleetColumnStore Columns;
+    private VehicleSearchIndex SearchIndex;
+    private VehicleQueryPlanner Planner;
+    private FleetAnalytics Analytics;
+    private FleetOccupancyIndex Occupancy;
+    private BookingService Bookings;
+    private JScrollPane CarPane;
+    private JTextField SearchField;
+    private JList<String> TypeList;
+    private DefaultListModel<String> TypeArray;
+    private JPanel SearchPanel;
+    private JTextArea InfoArea;
+    private JPanel InfoPanel;
+    private JButton InfoClose;
+    private JTextField AddBookingField_From;
+    private JTextField AddBookingField_To;
+    private JPanel AddBookingPanel;
+    private JButton TryBookButton;
+    private JButton CancelBookingButton;
+    private JButton MoveBookingButton;
+    private JButton FindSlotButton;
+    private JList<FBooking> BookingList;
+    private DefaultListModel<FBooking> BookingArray;
+
+    private VehicleSearchScheduler SearchScheduler;
+    private BookingJournal Journal;
+    private final Object CompactionLock = new Object();
+    private final AtomicBoolean CompactionQueued = new AtomicBoolean();
+    private ScheduledExecutorService CompactionWorker;
+    private final AtomicBoolean UnsavedVehicles = new AtomicBoolean();
+    private final AtomicBoolean SaveFailing = new AtomicBoolean();
+    private long LoadedJournalSegment = 0;
+
+    private static final long CompactJournalBytes = 4 << 20;
+    private static final long AutoSaveSeconds = Long.getLong("fleet.autosave.period", 60);
+    static final String FreePrefix = "free:";
+    /** end vars */
+
+    public VehicleManager(int NumToGenerate, File VehicleFile) throws IOException
+    {
+        this(VehicleFile);
+        SearchScheduler = new VehicleSearchScheduler(this);
+        StartWindow(NumToGenerate);
+    }
+
+    /** empty fleet with its indexes and no window, for tools that run headless */
+    VehicleManager(File VehicleFile)
+    {
+        this.VehicleFile = VehicleFile;
+
+        Fleet = new ArrayList<Vehicle>();
+        Plates = new FleetPlateIndex();
+        FleetModel = new FleetListModel(Fleet, null);
+        Columns = new FleetColumnStore();
+        SearchIndex = new VehicleSearchIndex(Columns);
+        Occupancy = new FleetOccupancyIndex();
+        Planner = new VehicleQueryPlanner(Columns, Plates, SearchIndex, Occupancy);
+        Analytics = new FleetAnalytics(Columns);
+        Bookings = new BookingService(Occupancy, Analytics);
+    }
+
+    @Override public void actionPerformed(ActionEvent Event)
+    {
+        try
+        {
+            if(Event.getSource() == InfoClose)
+            {
+                OnCloseInfo();
+            }
+            else if(Event.getSource() == TryBookButton)
+            {
+                OnTryBook();
+            }
+            else if(Event.getSource() == CancelBookingButton)
+            {
+                OnCancelBooking();
+            }
+            else if(Event.getSource() == MoveBookingButton)
+            {
+                OnMoveBooking();
+            }
+            else if(Event.getSource() == FindSlotButton)
+            {
+                OnFindSlot();
+            }
+        }
+        catch(UncheckedIOException Exception)
+        {
+            JOptionPane.showMessageDialog(Frame, Exception.getMessage() + ": " + Exception.getCause().getMessage()
+            + "\nThe change is kept and will be written with the next save.", "Journal write failed", JOptionPane.ERROR_MESSAGE);
+            DisplayCar(SelectedVehicleIndex);
+        }
+        catch(IllegalStateException Exception)
+        {
+            JOptionPane.showMessageDialog(Frame, Exception.getMessage(), "Booking refused", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    @Override public void valueChanged(ListSelectionEvent Event)
+    {
+        if(!Event.getValueIsAdjusting())
+        {
+            if(Event.getSource() == VehicleList && VehicleList.getSelectedIndex() != -1)
+            {
+                DisplayCar(VehicleList.getSelectedIndex());
+            }
+            else if(Event.getSource() == BookingList && BookingList.getSelectedValue() != null)
+            {
+                AddBookingField_From.setText(BookingList.getSelectedValue().HiredFrom.toString());
+                AddBookingField_To.setText(BookingList.getSelectedValue().HiredTo.toString());
+            }
+            else if(Event.getSource() == TypeList)
+            {
+                AsyncSearch();
+            }
+        }
+    }
+
+    @Override public void keyTyped(KeyEvent e)
+    {
+    }
+
+    @Override public void keyPressed(KeyEvent e)
+    {
+    }
+
+    @Override public void keyReleased(KeyEvent Event)
+    {
+        AsyncSearch();
+    }
+
+    @Override public void windowOpened(WindowEvent e) {}
+
+    /** the last save runs on the compaction worker, the window goes away straight away and the process exits once it is done */
+    @Override public void windowClosing(WindowEvent e)
+    {
+        Frame.setVisible(false);
+
+        CompactionWorker.execute(() ->
+        {
+            try
+            {
+                CompactJournal();
+                System.exit(0);
+            }
+            catch(IOException Exception)
+            {
+                System.err.println("saving " + VehicleFile + " failed: " + Exception);
+
+                SwingUtilities.invokeLater(() ->
+                {
+                    JOptionPane.showMessageDialog(null, "Saving " + VehicleFile + " failed: " + Exception.getMessage()
+                    + "\nBookings are kept in the journal and will be replayed on the next start.", "Save failed", JOptionPane.ERROR_MESSAGE);
+                    System.exit(1);
+                });
+            }
+        });
+    }
+
+    @Override public void windowClosed(WindowEvent e) {}
+    @Override public void windowIconified(WindowEvent e) {}
+    @Override public void windowDeiconified(WindowEvent e) {}
+    @Override public void windowActivated(WindowEvent e) {}
+    @Override public void windowDeactivated(WindowEvent e) {}
+
+    private void AsyncSearch()
+    {
+        if(TypeList.getSelectedValue() != null)
+        {
+            SearchScheduler.Submit(SearchField.getText(), TypeList.getSelectedValue());
+        }
+    }
+
+    private void OnCloseInfo()
+    {
+        Frame.remove(InfoPanel);
+
+        Frame.repaint();
+        Frame.revalidate();
+    }
+
+    /** the booking typed into the two date fields, null after marking whichever field is wrong */
+    private FBooking ReadBookingFields()
+    {
+        FDate From = null;
+        FDate To = null;
+
+        try
+        {
+            From = new FDate(AddBookingField_From.getText());
+        }
+        catch(IllegalArgumentException Exception)
+        {
+            AddBookingField_From.setText("!invalid date!");
+            From = null;
+        }
+
+        try
+        {
+            To = new FDate(AddBookingField_To.getText());
+        }
+        catch(IllegalArgumentException Exception)
+        {
+            AddBookingField_To.setText("!invalid date!");
+            To = null;
+        }
+
+        if(From == null || To == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return new FBooking(From, To);
+        }
+        catch(IllegalArgumentException Exception)
+        {
+            AddBookingField_From.setText("!invalid date!");
+            AddBookingField_To.setText("!invalid date!");
+            return null;
+        }
+    }
+
+    private void OnTryBook()
+    {
+        Vehicle SelectedCar = VehicleList.getModel().getElementAt(SelectedVehicleIndex);
+        FBooking Booking = ReadBookingFields();
+
+        if(Booking == null)
+        {
+            return;
+        }
+
+        if(!BookVehicle(SelectedCar, Booking))
+        {
+            AddBookingField_From.setText("that date is not available");
+            AddBookingField_To.setText("that date is not available");
+            return;
+        }
+
+        DisplayCar(SelectedVehicleIndex);
+    }
+
+    private void OnCancelBooking()
+    {
+        Vehicle SelectedCar = VehicleList.getModel().getElementAt(SelectedVehicleIndex);
+        FBooking Booking = BookingList.getSelectedValue();
+
+        if(Booking == null)
+        {
+            AddBookingField_From.setText("select a booking first");
+            return;
+        }
+
+        CancelBooking(SelectedCar, Booking);
+        DisplayCar(SelectedVehicleIndex);
+    }
+
+    /** moves the selected booking to the dates in the fields */
+    private void OnMoveBooking()
+    {
+        Vehicle SelectedCar = VehicleList.getModel().getElementAt(SelectedVehicleIndex);
+        FBooking Booking = BookingList.getSelectedValue();
+
+        if(Booking == null)
+        {
+            AddBookingField_From.setText("select a booking first");
+            return;
+        }
+
+        FBooking NewBooking = ReadBookingFields();
+
+        if(NewBooking == null)
+        {
+            return;
+        }
+
+        if(!MoveBooking(SelectedCar, Booking, NewBooking))
+        {
+            AddBookingField_From.setText("that date is not available");
+            AddBookingField_To.setText("that date is not available");
+            return;
+        }
+
+        DisplayCar(SelectedVehicleIndex);
+    }
+
+    /** replaces the dates in the fields with the earliest window of the same length from the same day on */
+    private void OnFindSlot()
+    {
+        Vehicle SelectedCar = VehicleList.getModel().getElementAt(SelectedVehicleIndex);
+        FBooking Booking = ReadBookingFields();
+
+        if(Booking == null)
+        {
+            return;
+        }
+
+        int NumDays = Booking.HiredFrom.DaysUntil(Booking.HiredTo);
+        FSlot Slot = FindEarliestSlot(SelectedCar, Booking.HiredFrom, NumDays);
+
+        if(Slot == null)
+        {
+            AddBookingField_From.setText("no window that long is free");
+            AddBookingField_To.setText("no window that long is free");
+            return;
+        }
+
+        AddBookingField_From.setText(Slot.Booking.HiredFrom.toString());
+        AddBookingField_To.setText(Slot.Booking.HiredTo.toString());
+    }
+
+    private void DisplayCar(int CarIndex)
+    {
+        SelectedVehicleIndex = CarIndex;
+        Vehicle SelectedCar = VehicleList.getModel().getElementAt(SelectedVehicleIndex);
+
+        Frame.remove(InfoPanel);
+
+        InfoArea.setText(SelectedCar.toString());
+        BookingArray.clear();
+
+        for(FBooking Booking : Bookings.Snapshot(SelectedCar).GetBookings())
+        {
+            BookingArray.addElement(Booking);
+        }
+
+        Frame.add(InfoPanel, BorderLayout.SOUTH);
+
+        Frame.repaint();
+        Frame.revalidate();
+    }
+
+    /**
+    indexes everything first and then appends to the fleet in one go, so a live JList gets a single event
+    a vehicle whose registration number is already taken still joins, so a save never drops it, but stays out of the plate index
+    and is handed back, lookups by plate find the first holder and its bookings cannot change until it gets a plate of its own
+    */
+    java.util.List<Vehicle> AddVehicles(java.util.List<Vehicle> NewVehicles)
+    {
+        int FirstId = Fleet.size();
+        int FleetId = FirstId;
+        ArrayList<Vehicle> Added = new ArrayList<Vehicle>(NewVehicles.size());
+        ArrayList<Vehicle> Rejected = new ArrayList<Vehicle>();
+
+        for(Vehicle NewVehicle : NewVehicles)
+        {
+            if(!Plates.Add(NewVehicle.RegNumber, FleetId))
+            {
+                Rejected.add(NewVehicle);
+            }
+
+            NewVehicle.FleetId = FleetId++;
+            NewVehicle.Owner = this;
+            Columns.Add(NewVehicle);
+            SearchIndex.Add(NewVehicle);
+            Occupancy.AddVehicle(NewVehicle);
+            Added.add(NewVehicle);
+        }
+
+        Analytics.AddVehicles(Added);
+        Fleet.addAll(Added);
+
+        if(!Added.isEmpty())
+        {
+            FleetModel.NotifyAppended(FirstId, Fleet.size() - 1);
+        }
+
+        return Rejected;
+    }
+
+    @Override public boolean CanTakeRegNumber(Vehicle Target, String RegNumber)
+    {
+        int FleetId = Plates.Find(RegNumber);
+        return FleetId == -1 || FleetId == Target.FleetId;
+    }
+
+    /**
+    a field change of a fleet vehicle, the plate, column and search indexes drop its old values and take the new ones
+    journal records find vehicles by plate, so a new plate is saved to the fleet file before the setter returns, records written
+    after it then carry the plate the file has, other fields are written with the next autosave
+    like AddVehicles it must not run while a search is reading the indexes
+    */
+    @Override public void Change(Vehicle Target, Runnable Apply)
+    {
+        String OldRegNumber = Target.RegNumber;
+
+        Bookings.Regroup(Target, () ->
+        {
+            Apply.run();
+            Columns.Update(Target);
+        });
+
+        if(!OldRegNumber.equals(Target.RegNumber))
+        {
+            if(Plates.Find(OldRegNumber) == Target.FleetId)
+            {
+                Plates.Remove(OldRegNumber);
+
+                //a vehicle loaded with the same plate takes it over
+                for(Vehicle Other : Fleet)
+                {
+                    if(Other.RegNumber.equals(OldRegNumber))
+                    {
+                        Plates.Add(OldRegNumber, Other.FleetId);
+                        break;
+                    }
+                }
+            }
+
+            Plates.Add(Target.RegNumber, Target.FleetId);
+        }
+
+        SearchIndex.Update(Target);
+        FleetModel.NotifyChanged(Target.FleetId);
+        UnsavedVehicles.set(true);
+
+        if(Journal != null && !OldRegNumber.equals(Target.RegNumber))
+        {
+            SaveAfterPlateChange();
+        }
+    }
+
+    private void SaveAfterPlateChange()
+    {
+        try
+        {
+            UnsavedVehicles.set(false);
+            CompactJournal();
+        }
+        catch(IOException Exception)
+        {
+            UnsavedVehicles.set(true);
+            throw new UncheckedIOException("the new registration number could not be saved", Exception);
+        }
+    }
+
+    void PopulateVehicles(int NumToGenerate, long Seed)
+    {
+        AddVehicles(FleetGenerator.Generate(NumToGenerate, Seed));
+        UnsavedVehicles.set(true);
+    }
+
+    static ArrayList<Vehicle> ReadTextFleet(File VehicleFile) throws IOException
+    {
+        FleetTextLoader.FLoadStats Stats = new FleetTextLoader.FLoadStats();
+        ArrayList<Vehicle> Result = FleetTextLoader.Load(VehicleFile, Stats);
+
+        System.out.println("loaded " + VehicleFile + ": " + Stats);
+        return Result;
+    }
+
+    static ArrayList<Vehicle> ReadFleet(File VehicleFile) throws IOException
+    {
+        return FleetBinaryStore.IsBinaryFile(VehicleFile) ? FleetBinaryStore.Read(VehicleFile) : FleetTextLoader.Load(VehicleFile, null);
+    }
+
+    static void WriteTextFleet(File VehicleFile, java.util.List<Vehicle> Vehicles) throws IOException
+    {
+        WriteTextFleet(VehicleFile, Vehicles, 0);
+    }
+
+    static void WriteTextFleet(File VehicleFile, java.util.List<Vehicle> Vehicles, long JournalSegment) throws IOException
+    {
+        try(FileChannel Channel = FileChannel.open(VehicleFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            Writer Out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(Channel), StandardCharsets.UTF_8), 1 << 16))
+        {
+            if(JournalSegment != 0)
+            {
+                Out.write(FleetTextLoader.JournalHeader + JournalSegment + "\n");
+            }
+
+            for(Vehicle Car : Vehicles)
+            {
+                Out.write(Car.toString() + "\n");
+
+                Out.write("{\n");
+
+                for(FBooking Booking : Car.Bookings)
+                {
+                    Out.write(Booking.toString() + "\n");
+                }
+
+                Out.write("}\n");
+            }
+
+            Out.flush();
+            Channel.force(true);
+        }
+    }
+
+    /** the last journal segment whose records are already in the file, 0 for none */
+    static long JournalSegmentOf(File VehicleFile) throws IOException
+    {
+        return FleetBinaryStore.IsBinaryFile(VehicleFile) ? FleetBinaryStore.ReadJournalSegment(VehicleFile) : FleetTextLoader.ReadJournalSegment(VehicleFile);
+    }
+
+    private void PopulateVehicles() throws IOException
+    {
+        long StartTime = System.nanoTime();
+        LoadedJournalSegment = JournalSegmentOf(VehicleFile);
+        java.util.List<Vehicle> Shared = AddVehicles(FleetBinaryStore.IsBinaryFile(VehicleFile) ? FleetBinaryStore.Read(VehicleFile) : ReadTextFleet(VehicleFile));
+        FleetMetrics.Global.LoadNanos.Record(System.nanoTime() - StartTime);
+
+        for(Vehicle Duplicate : Shared)
+        {
+            System.err.println("kept " + Duplicate + " from " + VehicleFile + " without indexing its plate: registration number " + Duplicate.RegNumber
+            + " is already in the fleet, give it a plate of its own before changing its bookings");
+        }
+    }
+
+    /**
+    only the journal rotation runs with all stripes held, its pause is recorded as SaveBarrier, then each vehicle is copied holding only its own stripe
+    a vehicle changed meanwhile was copied just before, so the file holds the fleet as it was at the rotation, which is exactly
+    the records of the segments up to the one returned, it is stamped with it so replay skips them
+    the old file is only replaced once the new one is completely on disk
+    */
+    long SaveToFile() throws IOException
+    {
+        synchronized(CompactionLock)
+        {
+            long StartTime = System.nanoTime();
+            int NumVehicles = Fleet.size();
+            ArrayList<Vehicle> Vehicles = new ArrayList<Vehicle>(NumVehicles);
+            long Segment;
+
+            try
+            {
+                long BarrierStart = System.nanoTime();
+                Segment = Bookings.BeginSnapshot(NumVehicles, () -> Journal != null ? Journal.Rotate() : 0L);
+                FleetMetrics.Global.SaveBarrierNanos.Record(System.nanoTime() - BarrierStart);
+
+                for(int Index = 0; Index < NumVehicles; ++Index)
+                {
+                    Vehicles.add(Bookings.SnapshotAtCut(Fleet.get(Index)));
+                }
+            }
+            finally
+            {
+                Bookings.EndSnapshot();
+            }
+
+            WriteFleetFile(Vehicles, Segment);
+            FleetMetrics.Global.SaveNanos.Record(System.nanoTime() - StartTime);
+            return Segment;
+        }
+    }
+
+    private void WriteFleetFile(ArrayList<Vehicle> Vehicles, long Segment) throws IOException
+    {
+        File TempFile = new File(VehicleFile.getPath() + ".tmp");
+
+        try
+        {
+            if(FleetBinaryStore.IsBinaryFile(VehicleFile))
+            {
+                FleetBinaryStore.Write(TempFile, Vehicles, Segment);
+            }
+            else
+            {
+                WriteTextFleet(TempFile, Vehicles, Segment);
+            }
+
+            FleetMetrics.Global.BytesWritten.add(TempFile.length());
+            Files.move(TempFile.toPath(), VehicleFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException Exception)
+        {
+            FleetMetrics.Global.SaveFailures.increment();
+            Files.deleteIfExists(TempFile.toPath());
+            throw Exception;
+        }
+    }
+
+    /**
+    books through the shared BookingService and keeps the journal from growing without bound
+    returns once the booking is journaled, UncheckedIOException when that failed and only the next save will keep it
+    */
+    public boolean BookVehicle(Vehicle Target, FBooking Booking)
+    {
+        long StartTime = System.nanoTime();
+        boolean Booked = Journaled(Target, () -> Bookings.TryBook(Target, Booking));
+
+        FleetMetrics.Global.BookingAttempts.increment();
+        FleetMetrics.Global.BookingNanos.Record(System.nanoTime() - StartTime);
+
+        if(!Booked)
+        {
+            FleetMetrics.Global.BookingConflicts.increment();
+            return false;
+        }
+
+        CompactJournalIfLarge();
+        return true;
+    }
+
+    /** only the journal grows, the fleet file is left alone until the next save */
+    public boolean CancelBooking(Vehicle Target, FBooking Booking)
+    {
+        if(!Journaled(Target, () -> Bookings.TryCancel(Target, Booking)))
+        {
+            return false;
+        }
+
+        CompactJournalIfLarge();
+        return true;
+    }
+
+    public boolean MoveBooking(Vehicle Target, FBooking Booking, FBooking NewBooking)
+    {
+        FleetMetrics.Global.BookingAttempts.increment();
+
+        if(!Journaled(Target, () -> Bookings.TryMove(Target, Booking, NewBooking)))
+        {
+            FleetMetrics.Global.BookingConflicts.increment();
+            return false;
+        }
+
+        CompactJournalIfLarge();
+        return true;
+    }
+
+    /** a change the journal failed to take is still in memory, so the next autosave has to write the whole fleet */
+    private boolean Journaled(Vehicle Target, BooleanSupplier Change)
+    {
+        //journal records find their vehicle by plate, a record for a vehicle sharing one would replay onto the first holder
+        if(Plates.Find(Target.RegNumber) != Target.FleetId)
+        {
+            throw new IllegalStateException(Target + " shares its registration number with another vehicle, give it a plate of its own first");
+        }
+
+        try
+        {
+            return Change.getAsBoolean();
+        }
+        catch(UncheckedIOException Exception)
+        {
+            UnsavedVehicles.set(true);
+            throw Exception;
+        }
+    }
+
+    /** bulk version of BookVehicle, the report says what happened to every row */
+    public BookingImporter.FImportReport ImportBookings(File RowsFile) throws IOException
+    {
+        BookingImporter.FImportReport Report = BookingImporter.Read(RowsFile);
+        BookingImporter.Apply(Report, this::FindByRegNumber, Bookings);
+
+        FleetMetrics.Global.BookingAttempts.add(Report.NumRows);
+        FleetMetrics.Global.BookingConflicts.add(Report.NumRows - Report.NumByStatus[BookingImporter.ERowStatus.Booked.ordinal()]);
+
+        CompactJournalIfLarge();
+        return Report;
+    }
+
+    /** folds the journal into a fresh fleet file, bookings made meanwhile land in the new journal */
+    void CompactJournal() throws IOException
+    {
+        synchronized(CompactionLock)
+        {
+            Journal.DeleteSegmentsUpTo(SaveToFile());
+        }
+    }
+
+    private void CompactJournalIfLarge()
+    {
+        if(Journal != null && Journal.Size() > CompactJournalBytes)
+        {
+            CompactJournalAsync();
+        }
+    }
+
+    private void CompactJournalAsync()
+    {
+        if(!CompactionQueued.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        CompactionWorker.submit(() ->
+        {
+            CompactionQueued.set(false);
+
+            try
+            {
+                CompactJournal();
+                SaveFailing.set(false);
+            }
+            catch(IOException Exception)
+            {
+                ReportSaveFailure(Exception);
+            }
+        });
+    }
+
+    /** periodic snapshot, skipped while nothing has changed since the last one */
+    private void AutoSave()
+    {
+        if(Journal.Size() == 0 && !UnsavedVehicles.get())
+        {
+            return;
+        }
+
+        try
+        {
+            UnsavedVehicles.set(false);
+            CompactJournal();
+            SaveFailing.set(false);
+        }
+        catch(IOException Exception)
+        {
+            UnsavedVehicles.set(true);
+            ReportSaveFailure(Exception);
+        }
+    }
+
+    /** always logged, shown in the window once per run of failures, the journal still holds every booking meanwhile */
+    private void ReportSaveFailure(IOException Exception)
+    {
+        System.err.println("saving " + VehicleFile + " failed: " + Exception);
+
+        if(Frame != null && SaveFailing.compareAndSet(false, true))
+        {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(Frame, "Saving " + VehicleFile + " failed: " + Exception.getMessage()
+            + "\nBookings are kept in the journal until a save succeeds.", "Save failed", JOptionPane.WARNING_MESSAGE));
+        }
+    }
+
+    private void OpenJournal() throws IOException
+    {
+        Journal = new BookingJournal(VehicleFile, LoadedJournalSegment);
+        Journal.Replay(this::FindByRegNumber, Bookings);
+        Bookings.SetJournal(Journal);
+
+        CompactionWorker = Executors.newSingleThreadScheduledExecutor(Runnable ->
+        {
+            Thread WorkerThread = new Thread(Runnable, "JournalCompaction");
+            WorkerThread.setDaemon(true);
+            return WorkerThread;
+        });
+
+        CompactionWorker.scheduleWithFixedDelay(this::AutoSave, AutoSaveSeconds, AutoSaveSeconds, TimeUnit.SECONDS);
+    }
+
+    /** generates NumToGenerate vehicles, or loads the fleet file when it is -1, then replays the journal */
+    void OpenFleet(int NumToGenerate) throws IOException
+    {
+        if(NumToGenerate != -1)
+        {
+            PopulateVehicles(NumToGenerate, System.nanoTime());
+        }
+        else
+        {
+            PopulateVehicles();
+        }
+
+        OpenJournal();
+    }
+
+    private void StartWindow(int NumCars) throws IOException
+    {
+        Frame = new JFrame("Vehicle Rentals");
+        Frame.setSize(500, 500);
+        Frame.setLayout(new BorderLayout());
+        Frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        Frame.addWindowListener(this);
+
+        OpenFleet(NumCars);
+
+        VehicleList = new JList<Vehicle>(FleetModel);
+        VehicleList.setPrototypeCellValue(new Lorry("Lamborghini", "Brown", "WWW 888", 12.666667f));
+        VehicleList.addListSelectionListener(this);
+
+        CarPane = new JScrollPane(VehicleList);
+
+        SearchField = new JTextField();
+        SearchField.setToolTipText("text to match, or terms like model:Volvo color:Red plate:ABC 123 gear:Manual gears>=7 load<5 "
+        + FreePrefix + "YYYY/MM/DD-YYYY/MM/DD");
+        SearchField.addKeyListener(this);
+
+        SearchPanel = new JPanel(new GridLayout(1, 2));
+
+        TypeArray = new DefaultListModel<String>();
+        TypeArray.addElement("Car");
+        TypeArray.addElement("Lorry");
+        TypeArray.addElement("Bike");
+
+        TypeList = new JList<String>(TypeArray);
+        TypeList.addListSelectionListener(this);
+
+        SearchPanel.add(SearchField);
+        SearchPanel.add(TypeList);
+
+        Frame.add(CarPane, BorderLayout.CENTER);
+        Frame.add(SearchPanel, BorderLayout.NORTH);
+        Frame.setVisible(true);
+
+        InfoArea = new JTextArea();
+        InfoClose = new JButton("CLOSE");
+        InfoPanel = new JPanel(new BorderLayout());
+        AddBookingField_From = new JTextField(35);
+        AddBookingField_To = new JTextField(35);
+        AddBookingPanel = new JPanel(new GridLayout(6, 1));
+        TryBookButton = new JButton("Book!");
+        CancelBookingButton = new JButton("Cancel booking");
+        MoveBookingButton = new JButton("Move booking");
+        FindSlotButton = new JButton("Next free");
+        BookingArray = new DefaultListModel<FBooking>();
+        BookingList = new JList<FBooking>(BookingArray);
+
+        InfoArea.setEditable(false);
+        InfoClose.addActionListener(this);
+        TryBookButton.addActionListener(this);
+        CancelBookingButton.addActionListener(this);
+        MoveBookingButton.addActionListener(this);
+        FindSlotButton.addActionListener(this);
+        BookingList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        BookingList.setVisibleRowCount(6);
+        BookingList.addListSelectionListener(this);
+
+        AddBookingPanel.add(AddBookingField_From);
+        AddBookingPanel.add(AddBookingField_To);
+        AddBookingPanel.add(TryBookButton);
+        AddBookingPanel.add(CancelBookingButton);
+        AddBookingPanel.add(MoveBookingButton);
+        AddBookingPanel.add(FindSlotButton);
+
+        JPanel DetailsPanel = new JPanel(new BorderLayout());
+        DetailsPanel.add(InfoArea, BorderLayout.NORTH);
+        DetailsPanel.add(new JScrollPane(BookingList), BorderLayout.CENTER);
+
+        InfoPanel.add(AddBookingPanel, BorderLayout.WEST);
+        InfoPanel.add(DetailsPanel, BorderLayout.CENTER);
+        InfoPanel.add(InfoClose, BorderLayout.EAST);
+
+        TypeList.setSelectedIndex(0);
     }
 
-    @Override public void keyTyped(KeyEvent e)
+    public int GetFleetSize()
+    {
+        return SearchIndex.Size();
+    }
+
+    public Vehicle GetVehicle(int FleetId)
+    {
+        return Fleet.get(FleetId);
+    }
+
+    public BookingService GetBookingService()
+    {
+        return Bookings;
+    }
+
+    public FleetAnalytics GetAnalytics()
+    {
+        return Analytics;
+    }
+
+    public Vehicle FindByRegNumber(String RegNumber)
+    {
+        int FleetId = Plates.Find(RegNumber);
+        return FleetId != -1 ? Fleet.get(FleetId) : null;
+    }
+
+    public FleetListModel SearchVehicles(String SearchInput, String TypeOption)
+    {
+        return ToListModel(SearchVehicleIds(SearchInput, TypeOption, null, () -> false));
+    }
+
+    /** true when every match of Next is known to be among the matches of Previous */
+    public boolean CanRefine(String Previous, String Next)
+    {
+        return FVehicleQuery.CanRefine(FVehicleQuery.Parse(Previous, ""), FVehicleQuery.Parse(Next, ""));
+    }
+
+    /** searches the whole fleet, or only the given ids when refining an earlier result, null if cancelled */
+    public int[] SearchVehicleIds(String SearchInput, String TypeOption, int[] Within, BooleanSupplier IsCancelled)
+    {
+        long StartTime = System.nanoTime();
+        int[] Ids = SearchVehicleIdsUntimed(SearchInput, TypeOption, Within, IsCancelled);
+
+        if(Ids == null)
+        {
+            FleetMetrics.Global.SearchesCancelled.increment();
+        }
+        else
+        {
+            FleetMetrics.Global.SearchNanos.Record(System.nanoTime() - StartTime);
+            FleetMetrics.Global.SearchResults.Record(Ids.length);
+        }
+
+        return Ids;
+    }
+
+    private int[] SearchVehicleIdsUntimed(String SearchInput, String TypeOption, int[] Within, BooleanSupplier IsCancelled)
+    {
+        return Planner.Run(FVehicleQuery.Parse(SearchInput, TypeOption), Within, IsCancelled);
+    }
+
+    /** fleet ids of every vehicle of the type that has no booking overlapping [From, To) */
+    public BitSet FindFreeVehicles(FDate From, FDate To, String TypeOption)
+    {
+        if(From.MoreOrEqual(To))
+        {
+            throw new IllegalArgumentException("from is more than to");
+        }
+
+        return Occupancy.FindFree(From, To, TypeOption);
+    }
+
+    /** fleet ids of every vehicle, whatever its type, with no booked day in [From, To) */
+    public int[] FindIdleVehicles(FDate From, FDate To)
+    {
+        if(From.MoreOrEqual(To))
+        {
+            throw new IllegalArgumentException("from is more than to");
+        }
+
+        BitSet Result = new BitSet();
+
+        for(byte Type = 0; Columns.Segment(Type) != null; ++Type)
+        {
+            Result.or(Occupancy.FindFree(From, To, Type));
+        }
+
+        return Result.stream().toArray();
+    }
+
+    static final class FSlot
+    {
+        public final Vehicle Target;
+        public final FBooking Booking;
+
+        FSlot(Vehicle Target, int StartDay, int NumDays)
+        {
+            this.Target = Target;
+            Booking = new FBooking(FDate.FromEpochDay(StartDay), FDate.FromEpochDay(StartDay + NumDays));
+        }
+    }
+
+    static void CheckSlotLength(FDate NotBefore, int NumDays)
+    {
+        if(NumDays < 1)
+        {
+            throw new IllegalArgumentException("a slot is at least one day");
+        }
+
+        if((long)NotBefore.ToEpochDay() + NumDays > FDate.LastEpochDay)
+        {
+            throw new IllegalArgumentException("a " + NumDays + " day slot from " + NotBefore + " ends after 9999/12/31");
+        }
+    }
+
+    /** earliest NumDays long window of one vehicle starting on NotBefore or later, null when none ends by 9999/12/31 */
+    public FSlot FindEarliestSlot(Vehicle Target, FDate NotBefore, int NumDays)
+    {
+        CheckSlotLength(NotBefore, NumDays);
+
+        int Start = FDate.EpochDayOf(Bookings.SnapshotBookings(Target).FindFirstFit(NotBefore.ToInt64(), NumDays));
+        return (long)Start + NumDays <= FDate.LastEpochDay ? new FSlot(Target, Start, NumDays) : null;
+    }
+
+    /**
+    the Limit earliest NumDays long windows starting on NotBefore or later among the vehicles matching the search, one per vehicle
+    the next free stretch of every candidate waits in a queue ordered by start, so bookings are only read up to the last window found
+    */
+    public ArrayList<FSlot> FindEarliestSlots(String SearchInput, String TypeOption, FDate NotBefore, int NumDays, int Limit)
+    {
+        CheckSlotLength(NotBefore, NumDays);
+
+        int[] Candidates = SearchVehicleIds(SearchInput, TypeOption, null, () -> false);
+        PriorityQueue<FBookingIndex.FGapCursor> Gaps = new PriorityQueue<FBookingIndex.FGapCursor>(Math.max(1, Candidates.length),
+        (Left, Right) -> Left.Start != Right.Start ? Integer.compare(Left.Start, Right.Start) : Integer.compare(Left.FleetId, Right.FleetId));
+
+        for(int FleetId : Candidates)
+        {
+            Gaps.add(Bookings.SnapshotBookings(Fleet.get(FleetId)).Gaps(NotBefore.ToInt64(), FleetId));
+        }
+
+        ArrayList<FSlot> Result = new ArrayList<FSlot>();
+
+        while(Result.size() < Limit && !Gaps.isEmpty())
+        {
+            FBookingIndex.FGapCursor Earliest = Gaps.poll();
+
+            //the queue is ordered by start, every window left ends even later
+            if((long)Earliest.Start + NumDays > FDate.LastEpochDay)
+            {
+                break;
+            }
+
+            if(Earliest.Fits(NumDays))
+            {
+                Result.add(new FSlot(Fleet.get(Earliest.FleetId), Earliest.Start, NumDays));
+            }
+            else if(Earliest.Next())
+            {
+                Gaps.add(Earliest);
+            }
+        }
+
+        return Result;
+    }
+
+    /** prints utilization by the given dimension, for every month with bookings unless a range is given, reads the fleet file and journal without writing either */
+    public static void Report(File VehicleFile, String By, String FromMonth, String ToMonth) throws IOException
+    {
+        VehicleManager Manager = new VehicleManager(VehicleFile);
+        Manager.PopulateVehicles();
+        BookingJournal.Replay(BookingJournal.PathOf(VehicleFile), Manager.LoadedJournalSegment, Manager::FindByRegNumber, Manager.Bookings);
+
+        FleetAnalytics.EDimension Dimension = FleetAnalytics.EDimension.valueOf(By.substring(0, 1).toUpperCase() + By.substring(1).toLowerCase());
+        int[] Range = FromMonth != null ? new int[] {FleetAnalytics.ParseMonth(FromMonth), FleetAnalytics.ParseMonth(ToMonth)} : Manager.Analytics.MonthRange();
+
+        if(Range == null)
+        {
+            System.out.println("no bookings in " + VehicleFile);
+            return;
+        }
+
+        for(FleetAnalytics.FUtilizationRow Row : Manager.Analytics.Utilization(Dimension, Range[0], Range[1]))
+        {
+            System.out.println(Row);
+        }
+    }
+
+    public FleetListModel ToListModel(int[] Ids)
+    {
+        return new FleetListModel(Fleet, Ids);
+    }
+}
+
+/**
+headless JSON over HTTP front end to the same fleet, bookings and journal the window uses
+GET  /search?q=&type=[&limit=]        q takes the same query terms as the search field
+GET  /available?from=Y/M/D&to=Y/M/D&type=[&limit=]
+GET  /idle?from=Y/M/D&to=Y/M/D[&limit=]
+GET  /utilization?by=model|color|type|month[&from=Y/M&to=Y/M]
+GET  /slot?from=Y/M/D&days=N&plate=  or  /slot?from=Y/M/D&days=N&q=&type=[&limit=]
+POST /book?plate=&from=Y/M/D&to=Y/M/D
+POST /cancel?plate=&from=Y/M/D&to=Y/M/D
+POST /move?plate=&from=Y/M/D&to=Y/M/D&newFrom=Y/M/D&newTo=Y/M/D
+*/
+final class FleetHttpServer
+{
+    static final int DefaultLimit = 100;
+
+    private final VehicleManager Context;
+    private final HttpServer Server;
+
+    FleetHttpServer(VehicleManager Context, InetSocketAddress Address) throws IOException
+    {
+        this.Context = Context;
+
+        Server = HttpServer.create(Address, 1024);
+        Server.setExecutor(NewRequestExecutor());
+        Server.createContext("/search", Exchange -> Handle(Exchange, "GET", this::OnSearch));
+        Server.createContext("/available", Exchange -> Handle(Exchange, "GET", this::OnAvailable));
+        Server.createContext("/idle", Exchange -> Handle(Exchange, "GET", this::OnIdle));
+        Server.createContext("/utilization", Exchange -> Handle(Exchange, "GET", this::OnUtilization));
+        Server.createContext("/slot", Exchange -> Handle(Exchange, "GET", this::OnSlot));
+        Server.createContext("/book", Exchange -> Handle(Exchange, "POST", this::OnBook));
+        Server.createContext("/cancel", Exchange -> Handle(Exchange, "POST", this::OnCancel));
+        Server.createContext("/move", Exchange -> Handle(Exchange, "POST", this::OnMove));
+    }
+
+    /** a virtual thread per request where the runtime has them, otherwise a cached pool of daemon threads */
+    static ExecutorService NewRequestExecutor()
+    {
+        try
+        {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException NotAvailable)
+        {
+            return Executors.newCachedThreadPool(Runnable ->
+            {
+                Thread Worker = new Thread(Runnable, "FleetHttp");
+                Worker.setDaemon(true);
+                return Worker;
+            });
+        }
+    }
+
+    public void Start()
+    {
+        Server.start();
+    }
+
+    public void Stop()
+    {
+        Server.stop(0);
+    }
+
+    public InetSocketAddress GetAddress()
+    {
+        return Server.getAddress();
+    }
+
+    interface FHandler
+    {
+        String Run(Map<String, String> Query, HttpExchange Exchange) throws FHttpError;
+    }
+
+    static final class FHttpError extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int Status;
+
+        FHttpError(int Status, String Message)
+        {
+            super(Message);
+            this.Status = Status;
+        }
+    }
+
+    /** every request gets an answer, an Error thrown by a handler still ends in a bare 500 before it reaches the server's thread */
+    private static void Handle(HttpExchange Exchange, String Method, FHandler Handler) throws IOException
+    {
+        int Status = 200;
+        String Body;
+        boolean HeadersSent = false;
+
+        try
+        {
+            try
+            {
+                if(!Exchange.getRequestMethod().equals(Method))
+                {
+                    throw new FHttpError(405, "use " + Method);
+                }
+
+                Body = Handler.Run(ParseQuery(Exchange.getRequestURI().getRawQuery()), Exchange);
+            }
+            catch(FHttpError Error)
+            {
+                Status = Error.Status;
+                Body = "{\"error\":" + Quote(Error.getMessage()) + "}";
+            }
+            catch(UncheckedIOException Exception)
+            {
+                Status = 500;
+                Body = "{\"error\":" + Quote(Exception.getMessage() + ": " + Exception.getCause().getMessage()) + "}";
+            }
+            catch(RuntimeException Exception)
+            {
+                Status = 500;
+                Body = "{\"error\":" + Quote(String.valueOf(Exception)) + "}";
+            }
+
+            byte[] Bytes = Body.getBytes(StandardCharsets.UTF_8);
+            Exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            HeadersSent = true;
+            Exchange.sendResponseHeaders(Status, Bytes.length);
+
+            try(OutputStream Out = Exchange.getResponseBody())
+            {
+                Out.write(Bytes);
+            }
+        }
+        finally
+        {
+            if(!HeadersSent)
+            {
+                Exchange.sendResponseHeaders(500, -1);
+            }
+
+            Exchange.close();
+        }
+    }
+
+    /** a broken percent escape is the client's fault, 400 */
+    static Map<String, String> ParseQuery(String RawQuery) throws FHttpError
+    {
+        HashMap<String, String> Result = new HashMap<String, String>();
+
+        if(RawQuery == null)
+        {
+            return Result;
+        }
+
+        for(String Pair : RawQuery.split("&"))
+        {
+            int Equals = Pair.indexOf('=');
+            String Key = Equals == -1 ? Pair : Pair.substring(0, Equals);
+            String Value = Equals == -1 ? "" : Pair.substring(Equals + 1);
+
+            try
+            {
+                Result.put(URLDecoder.decode(Key, StandardCharsets.UTF_8), URLDecoder.decode(Value, StandardCharsets.UTF_8));
+            }
+            catch(IllegalArgumentException Exception)
+            {
+                throw new FHttpError(400, "malformed query parameter " + Pair);
+            }
+        }
+
+        return Result;
+    }
+
+    static String Quote(String Value)
+    {
+        StringBuilder Result = new StringBuilder(Value.length() + 2).append('"');
+
+        for(int Index = 0; Index < Value.length(); ++Index)
+        {
+            char Each = Value.charAt(Index);
+
+            switch(Each)
+            {
+                case '"' -> Result.append("\\\"");
+                case '\\' -> Result.append("\\\\");
+                default ->
+                {
+                    if(Each < 0x20)
+                    {
+                        Result.append(String.format("\\u%04x", (int)Each));
+                    }
+                    else
+                    {
+                        Result.append(Each);
+                    }
+                }
+            }
+        }
+
+        return Result.append('"').toString();
+    }
+
+    private static String Required(Map<String, String> Query, String Key) throws FHttpError
+    {
+        String Value = Query.get(Key);
+
+        if(Value == null || Value.isEmpty())
+        {
+            throw new FHttpError(400, "missing " + Key);
+        }
+
+        return Value;
+    }
+
+    private static FDate RequiredDate(Map<String, String> Query, String Key) throws FHttpError
+    {
+        try
+        {
+            return new FDate(Required(Query, Key));
+        }
+        catch(IllegalArgumentException Exception)
+        {
+            throw new FHttpError(400, "invalid date " + Query.get(Key));
+        }
+    }
+
+    private static int Limit(Map<String, String> Query) throws FHttpError
+    {
+        return Limit(Query, DefaultLimit);
+    }
+
+    private static int Limit(Map<String, String> Query, int Default) throws FHttpError
+    {
+        try
+        {
+            int Limit = Query.containsKey("limit") ? Integer.parseInt(Query.get("limit")) : Default;
+
+            if(Limit < 1)
+            {
+                throw new FHttpError(400, "limit has to be at least 1");
+            }
+
+            return Limit;
+        }
+        catch(NumberFormatException Exception)
+        {
+            throw new FHttpError(400, "invalid limit " + Query.get("limit"));
+        }
+    }
+
+    private String VehiclesJson(int[] Ids, int Limit)
+    {
+        StringBuilder Result = new StringBuilder(64 + Math.min(Ids.length, Limit) * 64);
+        Result.append("{\"count\":").append(Ids.length).append(",\"vehicles\":[");
+
+        for(int Index = 0; Index < Ids.length && Index < Limit; ++Index)
+        {
+            Vehicle Each = Context.GetVehicle(Ids[Index]);
+
+            Result.append(Index == 0 ? "" : ",")
+            .append("{\"id\":").append(Each.FleetId)
+            .append(",\"plate\":").append(Quote(Each.RegNumber))
+            .append(",\"type\":").append(Quote(Each.getClass().getName()))
+            .append(",\"text\":").append(Quote(Each.toString())).append('}');
+        }
+
+        return Result.append("]}").toString();
+    }
+
+    private String OnSearch(Map<String, String> Query, HttpExchange Exchange) throws FHttpError
+    {
+        String Type = Query.getOrDefault("type", "Car");
+        int[] Ids = Context.SearchVehicleIds(Query.getOrDefault("q", ""), Type, null, () -> false);
+        return VehiclesJson(Ids, Limit(Query));
+    }
+
+    private String OnAvailable(Map<String, String> Query, HttpExchange Exchange) throws FHttpError
     {
+        FDate From = RequiredDate(Query, "from");
+        FDate To = RequiredDate(Query, "to");
+
+        if(From.MoreOrEqual(To))
+        {
+            throw new FHttpError(400, "from is more than to");
+        }
+
+        int[] Ids = Context.FindFreeVehicles(From, To, Query.getOrDefault("type", "Car")).stream().toArray();
+        return VehiclesJson(Ids, Limit(Query));
     }
 
-    @Override public void keyPressed(KeyEvent e)
-    {
+    private String OnIdle(Map<String, String> Query, HttpExchange Exchange) throws FHttpError
+    {
+        FDate From = RequiredDate(Query, "from");
+        FDate To = RequiredDate(Query, "to");
+
+        if(From.MoreOrEqual(To))
+        {
+            throw new FHttpError(400, "from is more than to");
+        }
+
+        return VehiclesJson(Context.FindIdleVehicles(From, To), Limit(Query));
     }
 
-    @Override public void keyReleased(KeyEvent Event)
+    private String OnUtilization(Map<String, String> Query, HttpExchange Exchange) throws FHttpError
     {
-        AsyncSearch();
-    }
+        FleetAnalytics.EDimension Dimension = null;
 
-    @Override public void windowOpened(WindowEvent e) {}
+        for(FleetAnalytics.EDimension Each : FleetAnalytics.EDimension.values())
+        {
+            Dimension = Each.name().equalsIgnoreCase(Required(Query, "by")) ? Each : Dimension;
+        }
 
-    @Override public void windowClosing(WindowEvent e)
-    {
-        try
+        if(Dimension == null)
         {
-            SaveToFile();
+            throw new FHttpError(400, "by has to be model, color, type or month");
         }
-        catch(IOException ignored){}
-    }
 
-    @Override public void windowClosed(WindowEvent e) {}
-    @Override public void windowIconified(WindowEvent e) {}
-    @Override public void windowDeiconified(WindowEvent e) {}
-    @Override public void windowActivated(WindowEvent e) {}
-    @Override public void windowDeactivated(WindowEvent e) {}
+        int[] Range;
 
-    private void AsyncSearch()
-    {
-        if(SearchThread != null && SearchThread.isAlive())
+        try
+        {
+            Range = Query.containsKey("from") ? new int[] {FleetAnalytics.ParseMonth(Required(Query, "from")), FleetAnalytics.ParseMonth(Required(Query, "to"))}
+            : Context.GetAnalytics().MonthRange();
+        }
+        catch(IllegalArgumentException Exception)
         {
-            SearchThread.stop();
+            throw new FHttpError(400, Exception.getMessage());
         }
 
-        SearchThread = new VehicleSearchThread(this, SearchField.getText(), TypeList.getSelectedValue());
-        SearchThread.start();
-    }
+        StringBuilder Result = new StringBuilder("{\"by\":").append(Quote(Dimension.name().toLowerCase())).append(",\"rows\":[");
 
-    private void OnCloseInfo()
-    {
-        Frame.remove(InfoPanel);
+        if(Range != null)
+        {
+            ArrayList<FleetAnalytics.FUtilizationRow> Rows;
 
-        Frame.repaint();
-        Frame.revalidate();
+            try
+            {
+                Rows = Context.GetAnalytics().Utilization(Dimension, Range[0], Range[1]);
+            }
+            catch(IllegalArgumentException Exception)
+            {
+                throw new FHttpError(400, Exception.getMessage());
+            }
+
+            for(int Index = 0; Index < Rows.size(); ++Index)
+            {
+                FleetAnalytics.FUtilizationRow Row = Rows.get(Index);
+
+                Result.append(Index == 0 ? "" : ",")
+                .append("{\"group\":").append(Quote(Row.Group))
+                .append(",\"month\":").append(Quote(Row.MonthString()))
+                .append(",\"bookedDays\":").append(Row.BookedDays)
+                .append(",\"availableDays\":").append(Row.AvailableDays)
+                .append(",\"utilization\":").append(String.format(Locale.ROOT, "%.2f", Row.Percent())).append('}');
+            }
+        }
+
+        return Result.append("]}").toString();
     }
 
-    private void OnTryBook()
+    /** the earliest window for one plate, or the limit earliest over every vehicle the search matches, by default just the one */
+    private String OnSlot(Map<String, String> Query, HttpExchange Exchange) throws FHttpError
     {
-        Vehicle SelectedCar = VehicleList.getModel().getElementAt(SelectedVehicleIndex);
-
-        FDate From = null;
-        FDate To = null;
+        FDate NotBefore = RequiredDate(Query, "from");
+        int NumDays;
 
         try
         {
-            From = new FDate(AddBookingField_From.getText());
+            NumDays = Integer.parseInt(Required(Query, "days"));
         }
-        catch(IllegalArgumentException Exception)
+        catch(NumberFormatException Exception)
         {
-            AddBookingField_From.setText("!invalid date!");
-            From = null;
+            throw new FHttpError(400, "invalid days " + Query.get("days"));
         }
 
         try
         {
-            To = new FDate(AddBookingField_To.getText());
+            VehicleManager.CheckSlotLength(NotBefore, NumDays);
         }
         catch(IllegalArgumentException Exception)
         {
-            AddBookingField_To.setText("!invalid date!");
-            To = null;
+            throw new FHttpError(400, Exception.getMessage());
         }
 
-        if(From == null || To == null)
+        ArrayList<VehicleManager.FSlot> Slots;
+
+        if(Query.containsKey("plate"))
         {
-            return;
+            Slots = new ArrayList<VehicleManager.FSlot>();
+            VehicleManager.FSlot Slot = Context.FindEarliestSlot(RequiredVehicle(Query), NotBefore, NumDays);
+
+            if(Slot != null)
+            {
+                Slots.add(Slot);
+            }
+        }
+        else
+        {
+            Slots = Context.FindEarliestSlots(Query.getOrDefault("q", ""), Query.getOrDefault("type", "Car"), NotBefore, NumDays, Limit(Query, 1));
         }
 
-        FBooking Booking = null;
+        StringBuilder Result = new StringBuilder("{\"count\":").append(Slots.size()).append(",\"slots\":[");
 
-        try
+        for(int Index = 0; Index < Slots.size(); ++Index)
         {
-            Booking = new FBooking(From, To);
+            VehicleManager.FSlot Slot = Slots.get(Index);
+
+            Result.append(Index == 0 ? "" : ",")
+            .append("{\"id\":").append(Slot.Target.FleetId)
+            .append(",\"plate\":").append(Quote(Slot.Target.RegNumber))
+            .append(",\"from\":").append(Quote(Slot.Booking.HiredFrom.toString()))
+            .append(",\"to\":").append(Quote(Slot.Booking.HiredTo.toString())).append('}');
         }
-        catch(IllegalArgumentException Exception)
+
+        return Result.append("]}").toString();
+    }
+
+    private Vehicle RequiredVehicle(Map<String, String> Query) throws FHttpError
+    {
+        String Plate = Required(Query, "plate");
+        Vehicle Target = Context.FindByRegNumber(Plate);
+
+        if(Target == null)
         {
-            AddBookingField_From.setText("!invalid date!");
-            AddBookingField_To.setText("!invalid date!");
-            return;
+            throw new FHttpError(404, "no vehicle " + Plate);
         }
 
-        if(!SelectedCar.AddBooking(Booking))
+        return Target;
+    }
+
+    private static FBooking RequiredBooking(Map<String, String> Query, String FromKey, String ToKey) throws FHttpError
+    {
+        FDate From = RequiredDate(Query, FromKey);
+        FDate To = RequiredDate(Query, ToKey);
+
+        if(From.MoreOrEqual(To))
         {
-            AddBookingField_From.setText("that date is not available");
-            AddBookingField_To.setText("that date is not available");
-            return;
+            throw new FHttpError(400, FromKey + " is more than " + ToKey);
         }
 
-        DisplayCar(SelectedVehicleIndex);
+        return new FBooking(From, To);
     }
 
-    private void DisplayCar(int CarIndex)
+    private static String BookingJson(String Key, Vehicle Target, FBooking Booking)
     {
-        SelectedVehicleIndex = CarIndex;
-        Vehicle SelectedCar = VehicleList.getModel().getElementAt(SelectedVehicleIndex);
+        return "{\"" + Key + "\":true,\"plate\":" + Quote(Target.RegNumber) + ",\"from\":" + Quote(Booking.HiredFrom.toString()) + ",\"to\":" + Quote(Booking.HiredTo.toString()) + "}";
+    }
 
-        Frame.remove(InfoPanel);
+    /** only answers once the change is journaled, a failed journal write is a 500 even though the change stays in memory */
+    private String OnBook(Map<String, String> Query, HttpExchange Exchange) throws FHttpError
+    {
+        Vehicle Target = RequiredVehicle(Query);
+        FBooking Booking = RequiredBooking(Query, "from", "to");
 
-        InfoArea.setText(SelectedCar.toString());
+        if(!Context.BookVehicle(Target, Booking))
+        {
+            throw new FHttpError(409, "that date is not available");
+        }
+
+        return BookingJson("booked", Target, Booking);
+    }
 
-        for(FBooking Booking : SelectedCar.GetBookings())
+    private String OnCancel(Map<String, String> Query, HttpExchange Exchange) throws FHttpError
+    {
+        Vehicle Target = RequiredVehicle(Query);
+        FBooking Booking = RequiredBooking(Query, "from", "to");
+
+        if(!Context.CancelBooking(Target, Booking))
         {
-            InfoArea.append("\n" + Booking.toString());
+            throw new FHttpError(404, "no booking " + Booking + " for " + Target.RegNumber);
         }
 
-        Frame.add(InfoPanel, BorderLayout.SOUTH);
+        return BookingJson("cancelled", Target, Booking);
+    }
 
-        Frame.repaint();
-        Frame.revalidate();
+    private String OnMove(Map<String, String> Query, HttpExchange Exchange) throws FHttpError
+    {
+        Vehicle Target = RequiredVehicle(Query);
+        FBooking Booking = RequiredBooking(Query, "from", "to");
+        FBooking NewBooking = RequiredBooking(Query, "newFrom", "newTo");
+
+        if(!Context.MoveBooking(Target, Booking, NewBooking))
+        {
+            throw new FHttpError(409, "no booking " + Booking + " for " + Target.RegNumber + ", or " + NewBooking + " is not available");
+        }
+
+        return BookingJson("moved", Target, NewBooking);
     }
 
-    private static String RandomizeRegNumber()
+    /** loads the fleet like the window would and serves it until the process is stopped */
+    public static void Serve(File VehicleFile, int Port) throws IOException
     {
-        Random RandomGenerator = new Random();
+        VehicleManager Manager = new VehicleManager(VehicleFile);
+        Manager.OpenFleet(VehicleFile.exists() ? -1 : 100);
+
+        FleetHttpServer Server = new FleetHttpServer(Manager, new InetSocketAddress(InetAddress.getLoopbackAddress(), Port));
+        Server.Start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            Server.Stop();
+
+            try
+            {
+                Manager.CompactJournal();
+            }
+            catch(IOException Exception)
+            {
+                System.err.println("saving " + VehicleFile + " failed: " + Exception);
+            }
+        }));
+
+        System.out.println("serving " + VehicleFile + " on http://" + Server.GetAddress().getHostString() + ":" + Server.GetAddress().getPort());
+    }
+}
+
+/** builds random fleets without any window, in parallel chunks that each draw from their own split of one seeded generator */
+final class FleetGenerator
+{
+    static final int ChunkSize = 1 << 14;
 
+    /** RandomizeRegNumber draws letters from A to Y and digits from 0 to 8 */
+    static final int MaxPlates = 25 * 25 * 25 * 9 * 9 * 9;
+
+    static String RandomizeRegNumber(SplittableRandom RandomGenerator)
+    {
         char Letter1 = (char)RandomGenerator.nextInt(65, 90);
         char Letter2 = (char)RandomGenerator.nextInt(65, 90);
         char Letter3 = (char)RandomGenerator.nextInt(65, 90);
@@ -516,237 +6268,312 @@ public class VehicleManager implements ActionListener, ListSelectionListener, Ke
         return "" + Letter1 + "" + Letter2 + "" + Letter3 + " " + Number1 + "" + Number2 + "" + Number3;
     }
 
-    private static String RandomizeModelName()
+    static String RandomizeModelName(SplittableRandom RandomGenerator)
     {
-        Random RandomGenerator = new Random();
-
         int ModelNameOffset = RandomGenerator.nextInt(0, Vehicle.Models.size() - 1);
         return Vehicle.Models.get(ModelNameOffset);
     }
 
-    private static String RandomizeColor()
+    static String RandomizeColor(SplittableRandom RandomGenerator)
     {
-        Random RandomGenerator = new Random();
-
         int ModelNameOffset = RandomGenerator.nextInt(0, Vehicle.Colors.size() - 1);
         return Vehicle.Colors.get(ModelNameOffset);
     }
 
-    private static Car.EGearMode RandomizeGearMode()
+    static Car.EGearMode RandomizeGearMode(SplittableRandom RandomGenerator)
     {
-        Random RandomGenerator = new Random();
-
         int Mode = RandomGenerator.nextInt(0, 2);
         return Car.EGearMode.values()[Mode];
     }
 
-    private static int RandomizeNumGears()
+    static int RandomizeNumGears(SplittableRandom RandomGenerator)
     {
-        Random RandomGenerator = new Random();
         return RandomGenerator.nextInt(1, 12);
     }
 
-    private static float RandomizeMaxLoad()
+    static float RandomizeMaxLoad(SplittableRandom RandomGenerator)
     {
-        Random RandomGenerator = new Random();
-
         int MaxInt =  RandomGenerator.nextInt(1, 20);
         float MaxFloat = MaxInt;
         MaxFloat /= 1.5;
         return MaxFloat;
     }
 
-    private void PopulateVehicles(int NumToGenerate)
+    static Vehicle RandomizeVehicle(SplittableRandom RandomGenerator)
     {
-        Random RandomGenerator = new Random();
+        Vehicle Base = new Vehicle(RandomizeModelName(RandomGenerator), RandomizeColor(RandomGenerator), RandomizeRegNumber(RandomGenerator));
 
-        for(int Index = 0; Index < NumToGenerate; ++Index)
+        return switch(RandomGenerator.nextInt(0, 3))
         {
-            Vehicle Base = new Vehicle(RandomizeModelName(), RandomizeColor(), RandomizeRegNumber());
-
-            int VehicleType = RandomGenerator.nextInt(0, 3);
-
-            switch(VehicleType)
-            {
-                case 0 -> VehicleArray.addElement(new Car(Base, RandomizeGearMode()));
-                case 1 -> VehicleArray.addElement(new Bike(Base, RandomizeNumGears()));
-                case 2 -> VehicleArray.addElement(new Lorry(Base, RandomizeMaxLoad()));
-            }
-        }
+            case 0 -> new Car(Base, RandomizeGearMode(RandomGenerator));
+            case 1 -> new Bike(Base, RandomizeNumGears(RandomGenerator));
+            default -> new Lorry(Base, RandomizeMaxLoad(RandomGenerator));
+        };
     }
 
-    private static Vehicle ParseVehicle(Scanner Scan)
+    /** the same seed gives the same fleet no matter how many threads run the chunks */
+    public static ArrayList<Vehicle> Generate(int NumToGenerate, long Seed)
     {
-        String Line = Scan.nextLine();
+        if(NumToGenerate > MaxPlates)
+        {
+            throw new IllegalArgumentException("cannot generate " + NumToGenerate + " vehicles, there are only " + MaxPlates + " distinct plates");
+        }
 
-        String[] Model_Color_RegNumber = Line.split(" ", 3);
+        int NumChunks = (NumToGenerate + ChunkSize - 1) / ChunkSize;
+        SplittableRandom Root = new SplittableRandom(Seed);
+        SplittableRandom[] ChunkGenerators = new SplittableRandom[NumChunks];
 
-        String Model = Model_Color_RegNumber[0];
+        for(int Chunk = 0; Chunk < NumChunks; ++Chunk)
+        {
+            ChunkGenerators[Chunk] = Root.split();
+        }
 
-        String Color = Model_Color_RegNumber[1];
-        Color = Color.substring(1, Color.length() - 1);
+        Vehicle[] Result = new Vehicle[NumToGenerate];
 
-        String RegNumber = Model_Color_RegNumber[2];
-        RegNumber = RegNumber.substring(1, RegNumber.indexOf(']'));
+        java.util.stream.IntStream.range(0, NumChunks).parallel().forEach(Chunk ->
+        {
+            int End = Math.min(NumToGenerate, (Chunk + 1) * ChunkSize);
 
-        Vehicle Base = new Vehicle(Model, Color, RegNumber);
+            for(int Index = Chunk * ChunkSize; Index < End; ++Index)
+            {
+                Result[Index] = RandomizeVehicle(ChunkGenerators[Chunk]);
+            }
+        });
 
-        String SpecialMember = Line.split(" ")[4];
+        //duplicates are redrawn in fleet order from their own generator, so the result still only depends on the seed
+        SplittableRandom PlateGenerator = Root.split();
+        FleetPlateIndex Plates = new FleetPlateIndex();
 
-        if(Line.contains("gears"))
+        for(int Index = 0; Index < NumToGenerate; ++Index)
         {
-            return new Bike(Base, Integer.parseUnsignedInt(SpecialMember));
+            while(!Plates.Add(Result[Index].RegNumber, Index))
+            {
+                Result[Index].SetRegNumber(RandomizeRegNumber(PlateGenerator));
+            }
         }
-        else if(Line.contains("tonnes"))
+
+        return new ArrayList<Vehicle>(Arrays.asList(Result));
+    }
+
+    /** writes a generated fleet straight to storage, binary when the file ends in .bin */
+    public static void GenerateToFile(int NumToGenerate, long Seed, File VehicleFile) throws IOException
+    {
+        long StartTime = System.nanoTime();
+        ArrayList<Vehicle> Vehicles = Generate(NumToGenerate, Seed);
+
+        if(FleetBinaryStore.IsBinaryFile(VehicleFile))
         {
-            return new Lorry(Base, Float.parseFloat(SpecialMember));
+            FleetBinaryStore.Write(VehicleFile, Vehicles);
         }
         else
         {
-            return new Car(Base, Car.EGearMode.valueOf(SpecialMember));
+            VehicleManager.WriteTextFleet(VehicleFile, Vehicles);
         }
+
+        System.out.println("generated " + NumToGenerate + " vehicles into " + VehicleFile + " in " + (System.nanoTime() - StartTime) / 1000000 + " ms");
     }
+}
 
-    private static ArrayList<FBooking> ParseBookings(Scanner Scan)
+/**
+in process load generator, N clients each replay their own seeded list of searches, availability checks and bookings against a generated fleet
+the workloads are drawn up front from one seed, so a run is repeatable up to how the clients interleave, which decides the conflicts
+*/
+final class FleetLoadTest
+{
+    static final int OpSearch = 0;
+    static final int OpAvailable = 1;
+    static final int OpBook = 2;
+    static final String[] OpNames = {"search", "available", "book"};
+
+    /** out of 100, the rest are bookings */
+    static final int SearchPercent = Integer.getInteger("fleet.loadtest.search", 40);
+    static final int AvailablePercent = Integer.getInteger("fleet.loadtest.available", 30);
+
+    static final int BookingsPerVehicle = 4;
+    static final int HorizonDays = 365;
+    static final int MaxBookingDays = 14;
+    static final String[] TypeNames = {"Car", "Lorry", "Bike"};
+
+    /** one client's operations as parallel arrays, Queries is only set for searches */
+    static final class FWorkload
     {
-        ArrayList<FBooking> Result = new ArrayList<FBooking>();
-
-        Scan.nextLine();
+        final byte[] Ops;
+        final int[] Targets;
+        final long[] From;
+        final long[] To;
+        final String[] Queries;
 
-        for(String Line = Scan.nextLine(); !Line.equals("}"); Line = Scan.nextLine())
+        FWorkload(int NumOps)
         {
-            String[] Dates = Line.split("-");
-            FDate From = new FDate(Dates[0].substring(0, Dates[0].length() - 1));
-            FDate To = new FDate(Dates[1].substring(1, Dates[1].length()));
-            FBooking Booking = new FBooking(From, To);
-            Result.add(Booking);
+            Ops = new byte[NumOps];
+            Targets = new int[NumOps];
+            From = new long[NumOps];
+            To = new long[NumOps];
+            Queries = new String[NumOps];
         }
-
-        return Result;
     }
 
-    private void PopulateVehicles() throws IOException
-    {
-        FileReader Reader = new FileReader(VehicleFile);
-        Scanner Scan = new Scanner(Reader);
+    /** results land here so the JIT cannot drop the work */
+    static volatile Object Sink;
 
-        while(Scan.hasNextLine())
-        {
-            Vehicle ParsedVehicle = ParseVehicle(Scan);
-            ParsedVehicle.Bookings = ParseBookings(Scan);
-            VehicleArray.addElement(ParsedVehicle);
-        }
+    private final VehicleManager Manager;
+    private final int FirstDay = FDate.EpochDayOf(2027, 1, 1);
+    private final FleetMetrics.FHistogram[] Latencies = {new FleetMetrics.FHistogram(), new FleetMetrics.FHistogram(), new FleetMetrics.FHistogram()};
+    private final LongAdder Conflicts = new LongAdder();
+
+    FleetLoadTest(VehicleManager Manager)
+    {
+        this.Manager = Manager;
+    }
 
-        Reader.close();
+    private long RandomDay(SplittableRandom RandomGenerator)
+    {
+        return FDate.PackEpochDay(FirstDay + RandomGenerator.nextInt(HorizonDays));
     }
 
-    private void SaveToFile() throws IOException
+    FWorkload Draw(int NumOps, SplittableRandom RandomGenerator)
     {
-        FileWriter Writer = new FileWriter(VehicleFile, false);
+        FWorkload Result = new FWorkload(NumOps);
 
-        for(int Index = 0; Index < VehicleArray.size(); ++Index)
+        for(int Index = 0; Index < NumOps; ++Index)
         {
-            Vehicle Car = VehicleArray.elementAt(Index);
-            Writer.write(Car.toString() + "\n");
+            int Roll = RandomGenerator.nextInt(100);
+            int Start = FirstDay + RandomGenerator.nextInt(HorizonDays);
+            int Target = RandomGenerator.nextInt(Manager.GetFleetSize());
 
-            Writer.write("{\n");
+            Result.Targets[Index] = Target;
+            Result.From[Index] = FDate.PackEpochDay(Start);
+            Result.To[Index] = FDate.PackEpochDay(Start + RandomGenerator.nextInt(1, MaxBookingDays + 1));
 
-            for(FBooking Booking : Car.Bookings)
+            if(Roll < SearchPercent)
             {
-                Writer.write(Booking.toString() + "\n");
+                Vehicle Source = Manager.GetVehicle(Target);
+                String Text = Source.toString();
+                int Length = RandomGenerator.nextInt(2, 6);
+                int Offset = RandomGenerator.nextInt(Math.max(1, Text.length() - Length));
+
+                Result.Ops[Index] = OpSearch;
+                Result.Queries[Index] = RandomGenerator.nextBoolean() ? Text.substring(Offset, Math.min(Text.length(), Offset + Length))
+                : "model:" + Source.Model + " color:" + Source.Color;
+            }
+            else
+            {
+                Result.Ops[Index] = (byte)(Roll < SearchPercent + AvailablePercent ? OpAvailable : OpBook);
             }
-
-            Writer.write("}\n");
         }
 
-        Writer.close();
+        return Result;
     }
 
-    private void StartWindow(int NumCars) throws IOException
+    private void Replay(FWorkload Workload)
     {
-        Frame = new JFrame("Vehicle Rentals");
-        Frame.setSize(500, 500);
-        Frame.setLayout(new BorderLayout());
-        Frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        Frame.addWindowListener(this);
-
-        VehicleArray = new DefaultListModel<Vehicle>();
-
-        if(NumCars != -1)
-        {
-            PopulateVehicles(NumCars);
-        }
-        else
+        for(int Index = 0; Index < Workload.Ops.length; ++Index)
         {
-            PopulateVehicles();
-        }
+            int Op = Workload.Ops[Index];
+            Vehicle Target = Manager.GetVehicle(Workload.Targets[Index]);
+            FDate From = FDate.FromInt64(Workload.From[Index]);
+            FDate To = FDate.FromInt64(Workload.To[Index]);
+            long StartTime = System.nanoTime();
 
-        VehicleList = new JList<Vehicle>(VehicleArray);
-        VehicleList.addListSelectionListener(this);
+            switch(Op)
+            {
+                case OpSearch -> Sink = Manager.SearchVehicleIds(Workload.Queries[Index], Target.getClass().getName(), null, () -> false);
+                case OpAvailable -> Sink = Manager.FindFreeVehicles(From, To, TypeNames[Workload.Targets[Index] % TypeNames.length]);
+                default ->
+                {
+                    if(!Manager.BookVehicle(Target, new FBooking(From, To)))
+                    {
+                        Conflicts.increment();
+                    }
+                }
+            }
 
-        CarPane = new JScrollPane(VehicleList);
+            Latencies[Op].Record(System.nanoTime() - StartTime);
+        }
+    }
 
-        SearchField = new JTextField();
-        SearchField.addKeyListener(this);
+    /** every client is released at once and the clock stops when the last one is done */
+    long RunClients(FWorkload[] Workloads) throws Exception
+    {
+        ExecutorService Clients = FleetHttpServer.NewRequestExecutor();
+        CountDownLatch Gate = new CountDownLatch(1);
+        ArrayList<Future<Void>> Done = new ArrayList<Future<Void>>();
 
-        SearchPanel = new JPanel(new GridLayout(1, 2));
+        for(FWorkload Workload : Workloads)
+        {
+            Done.add(Clients.submit(() ->
+            {
+                Gate.await();
+                Replay(Workload);
+                return null;
+            }));
+        }
 
-        TypeArray = new DefaultListModel<String>();
-        TypeArray.addElement("Car");
-        TypeArray.addElement("Lorry");
-        TypeArray.addElement("Bike");
+        long StartTime = System.nanoTime();
+        Gate.countDown();
 
-        TypeList = new JList<String>(TypeArray);
-        TypeList.addListSelectionListener(this);
+        for(Future<Void> Each : Done)
+        {
+            Each.get();
+        }
 
-        SearchPanel.add(SearchField);
-        SearchPanel.add(TypeList);
+        long Elapsed = System.nanoTime() - StartTime;
+        Clients.shutdown();
+        return Elapsed;
+    }
 
-        Frame.add(CarPane, BorderLayout.CENTER);
-        Frame.add(SearchPanel, BorderLayout.NORTH);
-        Frame.setVisible(true);
+    void Print(int NumClients, long Elapsed)
+    {
+        long Total = 0;
 
-        InfoArea = new JTextArea();
-        InfoClose = new JButton("CLOSE");
-        InfoPanel = new JPanel(new BorderLayout());
-        AddBookingField_From = new JTextField(35);
-        AddBookingField_To = new JTextField(35);
-        AddBookingPanel = new JPanel(new GridLayout(3, 1));
-        TryBookButton = new JButton("Book!");
+        System.out.printf("%-10s %10s %12s %10s %10s %10s %10s %10s%n", "op", "count", "ops/s", "mean us", "p50 us", "p99 us", "p999 us", "max us");
 
-        InfoArea.setEditable(false);
-        InfoClose.addActionListener(this);
-        TryBookButton.addActionListener(this);
+        for(int Op = 0; Op < Latencies.length; ++Op)
+        {
+            FleetMetrics.FHistogram Each = Latencies[Op];
+            Total += Each.Count();
 
-        AddBookingPanel.add(AddBookingField_From);
-        AddBookingPanel.add(AddBookingField_To);
-        AddBookingPanel.add(TryBookButton);
+            System.out.printf("%-10s %10d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n", OpNames[Op], Each.Count(), Each.Count() * 1e9 / Elapsed,
+            Each.Mean() / 1e3, Each.Percentile(0.5) / 1e3, Each.Percentile(0.99) / 1e3, Each.Percentile(0.999) / 1e3, Each.Max() / 1e3);
+        }
 
-        InfoPanel.add(AddBookingPanel, BorderLayout.WEST);
-        InfoPanel.add(InfoArea, BorderLayout.CENTER);
-        InfoPanel.add(InfoClose, BorderLayout.EAST);
+        long Bookings = Latencies[OpBook].Count();
 
-        TypeList.setSelectedIndex(0);
+        System.out.printf("%d clients on %d cores: %d ops in %.2f s, %.0f ops/s, %.2f%% of %d bookings conflicted%n",
+        NumClients, Runtime.getRuntime().availableProcessors(), Total, Elapsed / 1e9, Total * 1e9 / Elapsed,
+        Bookings == 0 ? 0.0 : 100.0 * Conflicts.sum() / Bookings, Bookings);
     }
 
-    public DefaultListModel<Vehicle> SearchVehicles(String SearchInput, String TypeOption)
+    /** generates and pre books the fleet headless, so no file or journal is touched */
+    public static void Run(int NumVehicles, int NumClients, int OpsPerClient, long Seed) throws Exception
     {
-        final String UppercaseInput = SearchInput.toUpperCase();
+        VehicleManager Manager = new VehicleManager(new File("LoadTest.txt"));
+        Manager.PopulateVehicles(NumVehicles, Seed);
 
-        DefaultListModel<Vehicle> Searched = new DefaultListModel<Vehicle>();
+        FleetLoadTest Test = new FleetLoadTest(Manager);
+        SplittableRandom Root = new SplittableRandom(Seed);
 
-        for(int Index = 0; Index < VehicleArray.size(); ++Index)
+        for(int FleetId = 0; FleetId < NumVehicles; ++FleetId)
         {
-            String CarAsString = VehicleArray.elementAt(Index).toString();
-            CarAsString = CarAsString.toUpperCase();
-
-            if(CarAsString.contains(UppercaseInput) && TypeOption.equals(VehicleArray.elementAt(Index).getClass().getName()))
+            for(int Index = 0; Index < BookingsPerVehicle; ++Index)
             {
-                Searched.addElement(VehicleArray.elementAt(Index));
+                long From = Test.RandomDay(Root);
+                long To = FDate.PackEpochDay(FDate.EpochDayOf(From) + Root.nextInt(1, MaxBookingDays + 1));
+                Manager.GetBookingService().TryBook(Manager.GetVehicle(FleetId), new FBooking(FDate.FromInt64(From), FDate.FromInt64(To)));
             }
         }
 
-        return Searched;
+        FWorkload[] Workloads = new FWorkload[NumClients];
+
+        for(int Client = 0; Client < NumClients; ++Client)
+        {
+            Workloads[Client] = Test.Draw(OpsPerClient, Root.split());
+        }
+
+        System.out.printf("%d vehicles, %d clients x %d ops, %d%% search %d%% available %d%% book, seed %d%n",
+        NumVehicles, NumClients, OpsPerClient, SearchPercent, AvailablePercent, 100 - SearchPercent - AvailablePercent, Seed);
+
+        Test.Print(NumClients, Test.RunClients(Workloads));
     }
 }
 
@@ -754,8 +6581,55 @@ class Main
 {
     public static void main(String[] args) throws Throwable
     {
-        File VehicleFile = new File("Vehicles.txt");
+        FleetMetrics.Global.Export();
+
+        if(args.length == 3 && args[0].equals("--import"))
+        {
+            FleetBinaryStore.Write(new File(args[2]), VehicleManager.ReadTextFleet(new File(args[1])));
+            return;
+        }
+
+        if((args.length == 3 || args.length == 4) && args[0].equals("--import-bookings"))
+        {
+            BookingImporter.ImportIntoFleet(new File(args[1]), new File(args[2]), args.length == 4 ? new File(args[3]) : null);
+            return;
+        }
+
+        if((args.length == 3 || args.length == 4) && args[0].equals("--generate"))
+        {
+            long Seed = args.length == 4 ? Long.parseLong(args[3]) : System.nanoTime();
+            FleetGenerator.GenerateToFile(Integer.parseInt(args[1]), Seed, new File(args[2]));
+            return;
+        }
+
+        if(args.length >= 1 && args.length <= 3 && args[0].equals("--serve"))
+        {
+            int Port = args.length >= 2 ? Integer.parseInt(args[1]) : 8080;
+            FleetHttpServer.Serve(new File(args.length == 3 ? args[2] : "Vehicles.txt"), Port);
+            return;
+        }
+
+        if((args.length == 3 || args.length == 5) && args[0].equals("--report"))
+        {
+            VehicleManager.Report(new File(args[1]), args[2], args.length == 5 ? args[3] : null, args.length == 5 ? args[4] : null);
+            return;
+        }
+
+        if(args.length >= 1 && args.length <= 5 && args[0].equals("--load-test"))
+        {
+            FleetLoadTest.Run(args.length >= 2 ? Integer.parseInt(args[1]) : 100000, args.length >= 3 ? Integer.parseInt(args[2]) : 64,
+            args.length >= 4 ? Integer.parseInt(args[3]) : 10000, args.length == 5 ? Long.parseLong(args[4]) : 42);
+            return;
+        }
+
+        if(args.length == 3 && args[0].equals("--export"))
+        {
+            VehicleManager.WriteTextFleet(new File(args[2]), FleetBinaryStore.Read(new File(args[1])));
+            return;
+        }
+
+        File VehicleFile = new File(args.length == 1 ? args[0] : "Vehicles.txt");
 
         new VehicleManager(VehicleFile.exists() ? -1 : 100, VehicleFile);
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+import fleetbench.IFleetFixture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/** the default package side of IFleetFixture, see there */
+public final class FleetFixture implements IFleetFixture
+{
+    private long[] Starts;
+    private Vehicle Full;
+
+    private VehicleManager Manager;
+    private String[] Queries;
+
+    private VehicleManager FileManager;
+    private File FleetFile;
+
+    @Override public void GenerateBookings(int NumBookings)
+    {
+        Starts = new long[NumBookings];
+
+        for(int Index = 0; Index < NumBookings; ++Index)
+        {
+            Starts[Index] = FDate.Pack(2000 + Index / 336, 1 + (Index / 28) % 12, 1 + (Index % 28));
+        }
+
+        Random RandomGenerator = new Random(Seed);
+
+        for(int Index = NumBookings - 1; Index > 0; --Index)
+        {
+            int Other = RandomGenerator.nextInt(Index + 1);
+            long Swap = Starts[Index];
+            Starts[Index] = Starts[Other];
+            Starts[Other] = Swap;
+        }
+
+        Full = (Vehicle)AddBookings();
+    }
+
+    @Override public Object AddBookings()
+    {
+        Vehicle Target = new Vehicle("Volvo", "Red", "ABC 123");
+
+        for(long Start : Starts)
+        {
+            Target.AddBooking(new FBooking(FDate.FromInt64(Start), FDate.FromInt64(Start + 1)));
+        }
+
+        return Target;
+    }
+
+    @Override public boolean CanFit(int StartIndex)
+    {
+        long Start = Starts[StartIndex];
+        return Full.Bookings.CanFit(Start, Start + 1);
+    }
+
+    @Override public void GenerateFleet(int NumVehicles, int BookingsPerVehicle)
+    {
+        SplittableRandom RandomGenerator = new SplittableRandom(Seed);
+        Manager = new VehicleManager(new File("Vehicles.txt"));
+        Manager.PopulateVehicles(NumVehicles, Seed);
+
+        for(int FleetId = 0; FleetId < NumVehicles; ++FleetId)
+        {
+            for(int Index = 0; Index < BookingsPerVehicle; ++Index)
+            {
+                int Month = RandomGenerator.nextInt(1, 13);
+                int Day = RandomGenerator.nextInt(1, 20);
+                FBooking Booking = new FBooking(new FDate(2026, Month, Day), new FDate(2026, Month, Day + RandomGenerator.nextInt(1, 10)));
+                Manager.GetBookingService().TryBook(Manager.GetVehicle(FleetId), Booking);
+            }
+        }
+    }
+
+    @Override public void DrawQueries(int NumQueries, int QueryLength)
+    {
+        Random RandomGenerator = new Random(Seed);
+        Queries = new String[NumQueries];
+
+        for(int Index = 0; Index < NumQueries; ++Index)
+        {
+            String Source = Manager.GetVehicle(RandomGenerator.nextInt(Manager.GetFleetSize())).toString();
+            int Offset = RandomGenerator.nextInt(Source.length() - QueryLength);
+            Queries[Index] = Source.substring(Offset, Offset + QueryLength);
+        }
+    }
+
+    @Override public Object SearchVehicles(int QueryIndex)
+    {
+        return Manager.SearchVehicles(Queries[QueryIndex], "Car");
+    }
+
+    @Override public void CreateFleetFile(boolean Binary) throws IOException
+    {
+        FleetFile = File.createTempFile("bench", Binary ? ".bin" : ".txt");
+        FileManager = new VehicleManager(FleetFile);
+
+        ArrayList<Vehicle> Vehicles = new ArrayList<Vehicle>(Manager.GetFleetSize());
+
+        for(int FleetId = 0; FleetId < Manager.GetFleetSize(); ++FleetId)
+        {
+            Vehicles.add(Manager.GetVehicle(FleetId).Snapshot());
+        }
+
+        FileManager.AddVehicles(Vehicles);
+        FileManager.SaveToFile();
+    }
+
+    @Override public long SaveToFile() throws IOException
+    {
+        return FileManager.SaveToFile();
+    }
+
+    @Override public Object ReadFleet() throws IOException
+    {
+        return VehicleManager.ReadFleet(FleetFile);
+    }
+
+    @Override public void DeleteFleetFile()
+    {
+        FleetFile.delete();
+    }
+}
@@ -0,0 +1,54 @@
+package fleetbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** the booking index of one vehicle, at NumBookings one day bookings */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookingBenchmark
+{
+    @Param({"100", "1000", "10000", "100000"})
+    public int NumBookings;
+
+    private IFleetFixture Fixture;
+    private int Next;
+
+    @Setup
+    public void GenerateBookings()
+    {
+        Fixture = IFleetFixture.Create();
+        Fixture.GenerateBookings(NumBookings);
+    }
+
+    /** time to fill an empty vehicle with all NumBookings bookings, in random order */
+    @Benchmark
+    public Object AddBookings()
+    {
+        return Fixture.AddBookings();
+    }
+
+    /** one overlap test against the full vehicle, the probes cycle through every booked day */
+    @Benchmark
+    public boolean CanFit()
+    {
+        int StartIndex = Next;
+        Next = StartIndex + 1 == NumBookings ? 0 : StartIndex + 1;
+        return Fixture.CanFit(StartIndex);
+    }
+}
@@ -0,0 +1,63 @@
+package fleetbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** writing and parsing the fleet file of a generated fleet with a few bookings per vehicle, in either format */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 4)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FleetFileBenchmark
+{
+    @Param({"100000"})
+    public int NumVehicles;
+
+    @Param({"text", "binary"})
+    public String Format;
+
+    private IFleetFixture Fixture;
+
+    @Setup
+    public void CreateFleetFile() throws IOException
+    {
+        Fixture = IFleetFixture.Create();
+        Fixture.GenerateFleet(NumVehicles, 4);
+        Fixture.CreateFleetFile(Format.equals("binary"));
+    }
+
+    @TearDown
+    public void DeleteFleetFile()
+    {
+        Fixture.DeleteFleetFile();
+    }
+
+    /** snapshot every vehicle, write a temporary file and move it over the fleet file */
+    @Benchmark
+    public long SaveToFile() throws IOException
+    {
+        return Fixture.SaveToFile();
+    }
+
+    /** the parse path PopulateVehicles takes when it loads the fleet file */
+    @Benchmark
+    public Object ReadFleet() throws IOException
+    {
+        return Fixture.ReadFleet();
+    }
+}
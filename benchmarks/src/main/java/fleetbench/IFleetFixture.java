@@ -0,0 +1,49 @@
+package fleetbench;
+
+import java.io.IOException;
+
+/**
+the application sits in the default package, which a benchmark class in a package cannot name and JMH will not generate code for
+FleetFixture implements this next to it and the benchmarks load it by name, every fleet comes from the PopulateVehicles randomizers with a fixed seed
+*/
+public interface IFleetFixture
+{
+    long Seed = 42;
+
+    /** a vehicle holding NumBookings one day bookings with a gap between each, their starts kept in random order */
+    void GenerateBookings(int NumBookings);
+
+    /** books every start of GenerateBookings into an empty vehicle, in the random order */
+    Object AddBookings();
+
+    /** whether a one day booking fits at the start with that index, which is always taken */
+    boolean CanFit(int StartIndex);
+
+    void GenerateFleet(int NumVehicles, int BookingsPerVehicle);
+
+    /** NumQueries substrings of QueryLength characters cut from the text of random vehicles */
+    void DrawQueries(int NumQueries, int QueryLength);
+
+    Object SearchVehicles(int QueryIndex);
+
+    /** a manager over a temporary copy of the generated fleet, saved once so ReadFleet has a file */
+    void CreateFleetFile(boolean Binary) throws IOException;
+
+    long SaveToFile() throws IOException;
+
+    Object ReadFleet() throws IOException;
+
+    void DeleteFleetFile();
+
+    static IFleetFixture Create()
+    {
+        try
+        {
+            return (IFleetFixture)Class.forName("FleetFixture").getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException Exception)
+        {
+            throw new IllegalStateException("FleetFixture is not on the class path", Exception);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package fleetbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** free text searches over the cars of a generated fleet, the queries are cut from real vehicle text so most of them match */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark
+{
+    static final int NumQueries = 64;
+
+    @Param({"10000", "100000", "300000"})
+    public int NumVehicles;
+
+    @Param({"1", "3", "6"})
+    public int QueryLength;
+
+    private IFleetFixture Fixture;
+    private int Next;
+
+    @Setup
+    public void GenerateFleet()
+    {
+        Fixture = IFleetFixture.Create();
+        Fixture.GenerateFleet(NumVehicles, 0);
+        Fixture.DrawQueries(NumQueries, QueryLength);
+    }
+
+    @Benchmark
+    public Object SearchVehicles()
+    {
+        Next = (Next + 1) & (NumQueries - 1);
+        return Fixture.SearchVehicles(Next);
+    }
+}